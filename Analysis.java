@@ -0,0 +1,249 @@
+/**
+ * @author Rohan
+ *
+ * Batch analysis: positions in, the perfect move and value of each out,
+ * with no console and no JVM start per position.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Analysis is an all-static uninstantiable class.
+ *
+ * A position is a line of 9 characters, 'X', 'O' or '.', spaces 0-8 in
+ * the order of the numerical coordinates. The side with fewer marks is
+ * to move, and 'X' when the counts are equal. For each position a line
+ * is written: the position, the mover, the best move (the lowest of the
+ * perfect ones, or '-' when the game is over), the value for the mover
+ * (1 win, 0 draw, -1 loss with perfect play) and the status, as
+ * Board.winner() gives it, separated by tabs. For example:
+ *
+ *     X.O.X....  O  8  0  P
+ *
+ * A line which is not a position reachable by taking turns gets the
+ * answer "invalid". Every answer comes from the Wizard's table and is
+ * worked out once, for all 3^9 lines, so analysing costs no more than
+ * reading. The input is cut into batches: the reading thread hands them
+ * to the workers as it goes, and a writer thread writes their answers in
+ * the order they were read, so reading, answering and writing overlap.
+ */
+class Analysis {
+    /** Private constructor prevents instantiablity. */
+    private Analysis() {}
+    // Static fields:
+    /** The bytes of input per batch. */
+    private static final int BATCH = 1 << 16;
+    /** The answer to every position, by its key. */
+    private static final byte[][] answers = new byte[19683][];
+    /** The answer to anything else. */
+    private static final byte[] INVALID = "\tinvalid\n".getBytes(StandardCharsets.US_ASCII);
+    /** The key digit of each byte: 1 for 'X', 2 for 'O', 0 for '.', else -1. */
+    private static final byte[] digits = new byte[256];
+    /** Handed to the writer after the last batch. */
+    private static final Future<byte[]> END = CompletableFuture.completedFuture(null);
+    static {
+        Arrays.fill(digits, (byte) -1);
+        digits['.'] = 0;
+        digits['X'] = 1;
+        digits['O'] = 2;
+        for (int key = 0; key < answers.length; key++) {
+            int xMask = 0, oMask = 0;
+            for (int n = 0, k = key; n < 9; n++, k /= 3) {
+                if (k % 3 == 1) xMask |= 1 << n;
+                if (k % 3 == 2) oMask |= 1 << n;
+            }
+            answers[key] = answer(xMask, oMask);
+        }
+    }
+    // Methods:
+    /** @return the answer to a position, after its 9 characters. */
+    private static byte[] answer(int xMask, int oMask) {
+        int xs = Integer.bitCount(xMask), os = Integer.bitCount(oMask);
+        if (xs - os > 1 || os - xs > 1) return INVALID;
+        boolean isXToMove = xs <= os;
+        int mover = isXToMove ? xMask : oMask, opp = isXToMove ? oMask : xMask;
+        if (!Wizard.isSolved(mover, opp)) return INVALID;
+        char status = Board.isFastDraw(xMask, oMask) ? 'D'
+                    : Board.hasLine(xMask) ? 'X'
+                    : Board.hasLine(oMask) ? 'O' : 'P';
+        int moves = Wizard.bestMoves(mover, opp);
+        String best = status != 'P' || moves == 0 ? "-"
+                    : String.valueOf(Integer.numberOfTrailingZeros(moves));
+        int value = status == 'D' ? 0 : Wizard.value(mover, opp);
+        return ("\t"+(isXToMove ? 'X' : 'O')+"\t"+best+"\t"+value+"\t"+status+"\n")
+            .getBytes(StandardCharsets.US_ASCII);
+    }
+    /**
+     * Answer every line of a batch.
+     * @return the answers, as the bytes to write.
+     */
+    static byte[] analyze(byte[] in, int length) {
+        byte[] out = new byte[length + length / 2 + 64];
+        int at = 0;
+        for (int start = 0; start < length; ) {
+            int end = start;
+            while (end < length && in[end] != '\n') end++;
+            int stop = end > start && in[end - 1] == '\r' ? end - 1 : end;
+            int key = 0;
+            for (int i = stop - 1; i >= start && key >= 0; i--)
+                key = digits[in[i] & 255] < 0 ? -1 : 3*key + digits[in[i] & 255];
+            byte[] answer = stop - start == 9 && key >= 0 ? answers[key] : INVALID;
+            if (at + (stop - start) + answer.length > out.length)
+                out = Arrays.copyOf(out, 2*out.length + (stop - start) + answer.length);
+            System.arraycopy(in, start, out, at, stop - start);
+            at += stop - start;
+            System.arraycopy(answer, 0, out, at, answer.length);
+            at += answer.length;
+            start = end + 1;
+        }
+        return Arrays.copyOf(out, at);
+    }
+    /**
+     * Analyse every position of a stream, in batches over some threads.
+     * @return the number of bytes read.
+     */
+    static long run(InputStream in, OutputStream out, int threads)
+            throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "analysis");
+            thread.setDaemon(true); // Never keep the program running
+            return thread;
+        });
+        // Batches in reading order; bounded, so reading waits for writing
+        BlockingQueue<Future<byte[]>> pending = new ArrayBlockingQueue<>(4*threads);
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            // After a failure, take batches to the end all the same,
+            // so that reading never waits on a queue nobody empties
+            while (true) {
+                try {
+                    Future<byte[]> batch = pending.take();
+                    if (batch == END) break;
+                    if (failure.get() == null) out.write(batch.get());
+                } catch (IOException exc) {
+                    failure.compareAndSet(null, exc);
+                } catch (InterruptedException | ExecutionException exc) {
+                    failure.compareAndSet(null, new IOException(exc));
+                }
+            }
+            try {
+                if (failure.get() == null) out.flush();
+            } catch (IOException exc) {
+                failure.set(exc);
+            }
+        }, "analysis-writer");
+        writer.start();
+        long total = 0;
+        byte[] carry = new byte[0];
+        try {
+            while (true) {
+                // A batch is whole lines; the last, part line goes on to the next
+                byte[] buffer = Arrays.copyOf(carry, Math.max(BATCH, 2*carry.length));
+                int length = carry.length, read = 0;
+                while (length < buffer.length && (read = in.read(buffer, length, buffer.length - length)) > 0)
+                    length += read;
+                int cut = length;
+                if (read >= 0) {
+                    while (cut > 0 && buffer[cut - 1] != '\n') cut--;
+                    if (cut == 0) cut = -1; // One line longer than the batch
+                }
+                carry = cut < 0 ? buffer : Arrays.copyOfRange(buffer, cut, length);
+                if (cut > 0) {
+                    int size = cut;
+                    pending.put(pool.submit(() -> analyze(buffer, size)));
+                }
+                total += length - carry.length;
+                if (read < 0 || failure.get() != null) break;
+            }
+            pending.put(END);
+            writer.join();
+        } finally {
+            pool.shutdown();
+        }
+        if (failure.get() != null) throw failure.get();
+        return total;
+    }
+    /**
+     * @return if run() fails, rather than hangs, when its output does:
+     * many batches of positions, written to a stream which throws once
+     * the first has gone, as a closed pipe does.
+     */
+    static boolean checkBrokenOutput(int threads) throws InterruptedException {
+        byte[] position = "X.O.X....\n".getBytes(StandardCharsets.US_ASCII);
+        byte[] in = new byte[position.length * (BATCH / position.length) * (8*threads + 8)];
+        for (int i = 0; i + position.length <= in.length; i += position.length)
+            System.arraycopy(position, 0, in, i, position.length);
+        OutputStream broken = new OutputStream() {
+            /** The bytes written so far. */
+            private long written;
+            @Override public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+            @Override public void write(byte[] b, int off, int len) throws IOException {
+                if ((written += len) > BATCH) throw new IOException("Broken pipe");
+            }
+        };
+        AtomicReference<IOException> thrown = new AtomicReference<>();
+        Thread running = new Thread(() -> {
+            try {
+                run(new ByteArrayInputStream(in), broken, threads);
+            } catch (IOException exc) {
+                thrown.set(exc);
+            } catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+            }
+        }, "analysis-check");
+        running.setDaemon(true); // Left behind if it hangs
+        running.start();
+        running.join(10000);
+        return !running.isAlive() && thrown.get() != null
+            && "Broken pipe".equals(thrown.get().getMessage());
+    }
+    /**
+     * Analyse the positions of a file, or of the standard input if it is
+     * "-" or missing, to the standard output, and report the speed to the
+     * standard error. Given "check", exit with status 1 unless a failing
+     * output stops the analysis with its error (see checkBrokenOutput).
+     * Arguments: [file] [threads], or check [threads].
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equalsIgnoreCase("check")) {
+            int threads = args.length > 1 ? Integer.parseInt(args[1])
+                        : Runtime.getRuntime().availableProcessors();
+            if (!checkBrokenOutput(threads)) {
+                System.err.println("A broken output hung the analysis, or lost its error");
+                System.exit(1);
+            }
+            System.out.println("A broken output stops the analysis with its error");
+            return;
+        }
+        String file = args.length > 0 ? args[0] : "-";
+        int threads = args.length > 1 ? Integer.parseInt(args[1])
+                    : Runtime.getRuntime().availableProcessors();
+        long start = System.nanoTime();
+        long bytes;
+        try (InputStream in = file.equals("-") ? System.in : Files.newInputStream(Paths.get(file))) {
+            bytes = run(in, new FileOutputStream(FileDescriptor.out), threads);
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.err.printf("%.1f MB analysed in %.2f s, %.1f MB/s, %d threads%n",
+                          bytes / 1e6, elapsed, bytes / 1e6 / elapsed, threads);
+    }
+}
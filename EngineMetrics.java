@@ -0,0 +1,232 @@
+/**
+ * @author Rohan
+ *
+ * Runtime metrics of the engine: how long each level takes to move,
+ * how fast the searches go, and how the games end.
+ */
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A class gathering the engine's metrics, and the MBean showing the
+ * search's part of them. Each level's part is its LevelMetrics.
+ *
+ * When the program runs with -Dttt.metrics=true, the boards' move(Level)
+ * time every move, the searches count their nodes and table probes, and
+ * Simulator and GameServer count results. Recording is a few LongAdder
+ * additions, with no locks, so threads never wait on each other.
+ * Otherwise ENABLED is a false constant and nothing is recorded.
+ *
+ * The MBeans are registered as ttt:type=EngineMetrics and
+ * ttt:type=LevelMetrics,level=LEVEL. With -Dttt.metricsLog=file the
+ * report is also appended to a file every -Dttt.metricsPeriod seconds
+ * (60 by default).
+ */
+class EngineMetrics implements EngineMetricsMBean {
+    // Static fields:
+    /** Tells whether metrics are recorded. */
+    static final boolean ENABLED = Boolean.getBoolean("ttt.metrics");
+    /** The one instance, the MBean. */
+    private static final EngineMetrics metrics = new EngineMetrics();
+    /** Each level's metrics, by ordinal. */
+    private static final LevelMetrics[] levels = new LevelMetrics[Level.values().length];
+    static {
+        for (Level level : Level.values())
+            levels[level.ordinal()] = new LevelMetrics();
+        if (ENABLED) {
+            register();
+            String log = System.getProperty("ttt.metricsLog");
+            if (log != null) dumpEvery(log, Long.getLong("ttt.metricsPeriod", 60));
+        }
+    }
+    // Fields:
+    /** Positions searched. */
+    private final LongAdder nodes = new LongAdder();
+    /** Nanoseconds spent searching. */
+    private final LongAdder searchNanos = new LongAdder();
+    /** Transposition table probes. */
+    private final LongAdder probes = new LongAdder();
+    /** Probes which found their position. */
+    private final LongAdder hits = new LongAdder();
+    /** Private constructor: there is one instance. */
+    private EngineMetrics() {}
+    // Methods:
+    /** Register the MBeans with the platform's server. */
+    private static void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(metrics, new ObjectName("ttt:type=EngineMetrics"));
+            for (Level level : Level.values())
+                server.registerMBean(levels[level.ordinal()],
+                    new ObjectName("ttt:type=LevelMetrics,level="+level));
+        } catch (JMException exc) {
+            System.err.println("Engine metrics: "+exc.getMessage());
+        }
+    }
+    /** Append the report to a file every period, on a daemon thread. */
+    private static void dumpEvery(String file, long seconds) {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-dump");
+            thread.setDaemon(true); // Never keep the program running
+            return thread;
+        });
+        timer.scheduleAtFixedRate(() -> {
+            try {
+                Files.write(Paths.get(file),
+                            (LocalDateTime.now()+"\n"+report()+"\n\n")
+                                .getBytes(StandardCharsets.UTF_8),
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException exc) {
+                System.err.println("Engine metrics "+file+": "+exc.getMessage());
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+    }
+    /** Record a move of a level, which took some nanoseconds to choose. */
+    static void recordMove(Level level, long nanos) {
+        levels[level.ordinal()].record(nanos);
+    }
+    /**
+     * Record a search.
+     * @param nodes the positions searched.
+     * @param nanos the time taken.
+     * @param probes the transposition table probes, if there is a table.
+     * @param hits the probes which found their position.
+     */
+    static void recordSearch(long nodes, long nanos, long probes, long hits) {
+        metrics.nodes.add(nodes);
+        metrics.searchNanos.add(nanos);
+        if (probes > 0) {
+            metrics.probes.add(probes);
+            metrics.hits.add(hits);
+        }
+    }
+    /** Record a finished game of the computer at a level, by its winner. */
+    static void recordResult(Level level, char winner) {
+        levels[level.ordinal()].result(winner);
+    }
+    /** @return every metric, as a table. */
+    static String report() {
+        StringBuilder sb = new StringBuilder(
+            "level\tmoves\tmean us\tp50 us\tp99 us\tp99.9 us\tmax us\twins\tdraws\tlosses");
+        for (Level level : Level.values()) {
+            LevelMetrics m = levels[level.ordinal()];
+            sb.append(String.format("%n%s\t%d\t%.2f\t%.2f\t%.2f\t%.2f\t%.2f\t%d\t%d\t%d",
+                level, m.getMoves(), m.getMeanMicros(), m.getP50Micros(),
+                m.getP99Micros(), m.getP999Micros(), m.getMaxMicros(),
+                m.getWins(), m.getDraws(), m.getLosses()));
+        }
+        sb.append(String.format("%nnodes %d at %.0f/s, table probes %d, hit rate %.4f",
+            metrics.getNodes(), metrics.getNodesPerSecond(),
+            metrics.getTableProbes(), metrics.getTableHitRate()));
+        return sb.toString();
+    }
+    /** Forget everything recorded so far. */
+    static void clear() {
+        metrics.reset();
+    }
+    @Override public long getNodes() { return nodes.sum(); }
+    @Override public double getNodesPerSecond() {
+        long nanos = searchNanos.sum();
+        return nanos == 0 ? 0 : nodes.sum() * 1e9 / nanos;
+    }
+    @Override public long getTableProbes() { return probes.sum(); }
+    @Override public double getTableHitRate() {
+        long n = probes.sum();
+        return n == 0 ? 0 : hits.sum() / (double) n;
+    }
+    @Override public String getReport() { return report(); }
+    @Override public void reset() {
+        nodes.reset();
+        searchNanos.reset();
+        probes.reset();
+        hits.reset();
+        for (LevelMetrics level : levels) level.reset();
+    }
+}
+/**
+ * The metrics of one level, and their MBean. Move times go into a
+ * histogram of powers of two: bucket b counts the moves taking under
+ * 2^b nanoseconds but not under 2^(b-1).
+ */
+class LevelMetrics implements LevelMetricsMBean {
+    // Static fields:
+    /** The number of buckets: the last holds everything over a minute. */
+    private static final int BUCKETS = 37;
+    // Fields:
+    /** Moves in each bucket. */
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    /** Moves. */
+    private final LongAdder moves = new LongAdder();
+    /** Nanoseconds spent choosing them. */
+    private final LongAdder nanos = new LongAdder();
+    /** The longest move, in nanoseconds. */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+    /** Games won, drawn and lost, by the computer. */
+    private final LongAdder wins = new LongAdder(), draws = new LongAdder(),
+                            losses = new LongAdder();
+    /** Constructor. */
+    LevelMetrics() {
+        for (int b = 0; b < BUCKETS; b++) buckets[b] = new LongAdder();
+    }
+    // Methods:
+    /** Record a move. */
+    void record(long time) {
+        buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(time))].increment();
+        moves.increment();
+        nanos.add(time);
+        max.accumulate(time);
+    }
+    /** Record a result. */
+    void result(char winner) {
+        if (winner == 'X') wins.increment();
+        else if (winner == 'O') losses.increment();
+        else if (winner == 'D') draws.increment();
+    }
+    /** @return the bound under which a fraction of the moves took, in microseconds. */
+    private double percentile(double p) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int b = 0; b < BUCKETS; b++) total += counts[b] = buckets[b].sum();
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(p * total);
+        for (int b = 0; b < BUCKETS; b++)
+            if ((rank -= counts[b]) <= 0) return (1L << b) / 1e3;
+        return 0;
+    }
+    @Override public long getMoves() { return moves.sum(); }
+    @Override public double getMeanMicros() {
+        long n = moves.sum();
+        return n == 0 ? 0 : nanos.sum() / 1e3 / n;
+    }
+    @Override public double getP50Micros() { return percentile(0.50); }
+    @Override public double getP99Micros() { return percentile(0.99); }
+    @Override public double getP999Micros() { return percentile(0.999); }
+    @Override public double getMaxMicros() { return max.get() / 1e3; }
+    @Override public long getWins() { return wins.sum(); }
+    @Override public long getDraws() { return draws.sum(); }
+    @Override public long getLosses() { return losses.sum(); }
+    /** Forget everything recorded so far. */
+    void reset() {
+        for (LongAdder bucket : buckets) bucket.reset();
+        moves.reset();
+        nanos.reset();
+        max.reset();
+        wins.reset();
+        draws.reset();
+        losses.reset();
+    }
+}
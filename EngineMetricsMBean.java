@@ -0,0 +1,21 @@
+/**
+ * @author Rohan
+ *
+ * The management interface of EngineMetrics. JMX requires it public.
+ */
+
+/** What the engine has searched, as seen through JMX. */
+public interface EngineMetricsMBean {
+    /** @return the positions searched. */
+    long getNodes();
+    /** @return the positions searched per second of searching. */
+    double getNodesPerSecond();
+    /** @return the transposition table probes. */
+    long getTableProbes();
+    /** @return the fraction of probes which found their position. */
+    double getTableHitRate();
+    /** @return every metric, as the periodic dump writes them. */
+    String getReport();
+    /** Forget everything recorded so far. */
+    void reset();
+}
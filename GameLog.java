@@ -0,0 +1,384 @@
+/**
+ * @author Rohan
+ *
+ * A compact binary log of finished games, for keeping every game the
+ * Simulator or GameServer plays and reading them back for analysis.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * GameLog is an all-static uninstantiable class holding the format.
+ *
+ * A log is the magic int "TTG1" and then one record per game:
+ * a header byte, then four bits per number. The header holds the
+ * computer's level (bits 0-1), whether the computer started (bit 2),
+ * the result (bits 3-4: in progress, 'X', 'O' or 'D') and the level
+ * its opponent played at (bits 5-6), or bit 7 if the opponent was a
+ * player, of no level. The numbers are the count of moves and then each
+ * move's numerical coordinate, high nibble first, padded to a whole
+ * byte. A full game takes 6 bytes.
+ */
+class GameLog {
+    /** Private constructor prevents instantiablity. */
+    private GameLog() {}
+    // Static fields:
+    /** The first int of every log: "TTG1". */
+    static final int MAGIC = 0x54544731;
+    /** The header bit of a game against a player. */
+    static final int PLAYER = 0x80;
+    /** The most bytes of a record. */
+    static final int MAX_RECORD = 6;
+    /** The results, by their code in the header. */
+    static final String RESULTS = "PXOD";
+    // Methods:
+    /** @return the bytes of a record of some moves. */
+    static int recordLength(int moves) { return 1 + (moves + 2) / 2; }
+    /**
+     * Write a board's game into a buffer.
+     * @param opponent the level the opponent played at, or null for a player.
+     */
+    static void encode(Board board, Level opponent, ByteBuffer out) {
+        int moves = board.getMoveCount();
+        out.put((byte) (board.getLevel().ordinal()
+                        | (board.getIsCompStarted() ? 4 : 0)
+                        | RESULTS.indexOf(board.winner()) << 3
+                        | (opponent == null ? PLAYER : opponent.ordinal() << 5)));
+        int pending = moves; // The count is the first nibble
+        for (int i = 0; i < moves; i++) {
+            if ((i & 1) == 0) out.put((byte) (pending << 4 | board.getMove(i)));
+            else pending = board.getMove(i);
+        }
+        if ((moves & 1) == 0) out.put((byte) (pending << 4));
+    }
+    /**
+     * Summarize a log: results per level and opponent, and the speed of
+     * reading it.
+     * Arguments: log file.
+     */
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get(args.length > 0 ? args[0] : "games.log");
+        int levels = Level.values().length;
+        // By level, then by opponent: the levels, then a player
+        long[][][] results = new long[levels][levels + 1][RESULTS.length()];
+        long games = 0, moves = 0, mismatches = 0;
+        long start = System.nanoTime();
+        try (GameLogReader reader = new GameLogReader(file)) {
+            while (reader.next()) {
+                games++;
+                moves += reader.getMoveCount();
+                int opponent = reader.getOpponent() == null ? levels
+                             : reader.getOpponent().ordinal();
+                results[reader.getLevel().ordinal()][opponent]
+                       [RESULTS.indexOf(reader.getResult())]++;
+                if (reader.toBoard().winner() != reader.getResult()) mismatches++;
+            }
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d games, %.2f moves/game, read and replayed at %.0f games/s%n",
+                          games, moves / (double) Math.max(1, games), games / elapsed);
+        System.out.println("level\topponent\tX\tO\tD\tP");
+        for (Level level : Level.values())
+            for (int opponent = 0; opponent <= levels; opponent++) {
+                long[] r = results[level.ordinal()][opponent];
+                if (r[0] + r[1] + r[2] + r[3] == 0) continue;
+                System.out.printf("%s\t%s\t%d\t%d\t%d\t%d%n", level,
+                    opponent < levels ? Level.values()[opponent] : "player",
+                    r[1], r[2], r[3], r[0]);
+            }
+        if (mismatches > 0)
+            System.out.println(mismatches+" games replay to a different result");
+    }
+}
+/**
+ * A class appending records to a log. Each thread gathers its records in
+ * a buffer of its own, and hands it to the writer's appender thread once
+ * 64 KB are full, taking an empty one back; only the appender writes to
+ * the file. So a game costs a few bytes of copying under a lock no other
+ * thread takes, unless flush() is gathering the buffers, and no thread
+ * but the appender ever waits on the disk, unless the disk falls so far
+ * behind that QUEUED buffers are waiting for it.
+ *
+ * The records of different threads reach the file in the order their
+ * buffers fill, not the order the games were written; flush() and close()
+ * hand over every buffer, full or not, and wait until all are written.
+ */
+class GameLogWriter implements Closeable {
+    // Static fields:
+    /** The bytes of a buffer. */
+    private static final int BUFFER = 1 << 16;
+    /** The most full buffers waiting for the appender. */
+    private static final int QUEUED = 64;
+    /** The buffer telling the appender to stop. */
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+    /** The log file named by the property ttt.gameLog, if any. */
+    private static final String PATH = System.getProperty("ttt.gameLog");
+    /** The shared writer, once opened. */
+    private static GameLogWriter shared;
+    /** Tells whether the shared writer has been opened. */
+    private static boolean opened;
+    // Fields:
+    /** The file, opened to append. */
+    private final FileChannel channel;
+    /** Buffers of records, in the order they were handed over. */
+    private final BlockingQueue<ByteBuffer> full = new LinkedBlockingQueue<>(QUEUED);
+    /** Buffers written out, to be filled again. */
+    private final ConcurrentLinkedQueue<ByteBuffer> empty = new ConcurrentLinkedQueue<>();
+    /** The buffer of each thread that has written. */
+    private final ThreadLocal<Gatherer> gatherer = ThreadLocal.withInitial(this::newGatherer);
+    /** Every thread's gatherer, for flush() to empty. */
+    private final List<Gatherer> gatherers = new CopyOnWriteArrayList<>();
+    /** The thread writing the buffers to the file. */
+    private final Thread appender;
+    /** The number of buffers handed over, and of those written, under the writer's lock. */
+    private long handed, written;
+    /** The first failure to write, thrown to the threads writing after it. */
+    private volatile IOException failure;
+    /** Tells whether the writer has been closed. */
+    private volatile boolean closed;
+    /** Constructor given the file, made if it is not there. */
+    GameLogWriter(Path file) throws IOException {
+        if (Files.exists(file) && Files.size(file) > 0) {
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer magic = ByteBuffer.allocate(4);
+                if (in.read(magic) < 4 || magic.getInt(0) != GameLog.MAGIC)
+                    throw new IOException("Not a game log: "+file);
+            }
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                   StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (channel.size() == 0) {
+            ByteBuffer magic = ByteBuffer.allocate(4).putInt(GameLog.MAGIC).flip();
+            while (magic.hasRemaining()) channel.write(magic);
+        }
+        appender = new Thread(this::append, "GameLogWriter");
+        appender.setDaemon(true);
+        appender.start();
+    }
+    /** A thread's buffer, locked only by its thread and by flush(). */
+    private static class Gatherer {
+        /** Records not yet handed over. */
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER);
+    }
+    // Methods:
+    /**
+     * @return the writer to the file named by the property ttt.gameLog,
+     * closed when the program ends, or null if there is none.
+     */
+    static synchronized GameLogWriter shared() {
+        if (!opened) {
+            opened = true;
+            if (PATH != null) {
+                try {
+                    GameLogWriter writer = new GameLogWriter(Paths.get(PATH));
+                    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                        try {
+                            writer.close();
+                        } catch (IOException exc) {
+                            System.err.println("Game log "+PATH+": "+exc.getMessage());
+                        }
+                    }));
+                    shared = writer;
+                } catch (IOException exc) {
+                    System.err.println("Game log "+PATH+": "+exc.getMessage());
+                }
+            }
+        }
+        return shared;
+    }
+    /** @return a new thread's gatherer, known to flush(). */
+    private Gatherer newGatherer() {
+        Gatherer made = new Gatherer();
+        gatherers.add(made);
+        return made;
+    }
+    /**
+     * Append a board's game.
+     * @param opponent the level the opponent played at, or null for a player.
+     */
+    void write(Board board, Level opponent) throws IOException {
+        if (failure != null) throw failure;
+        if (closed) throw new IOException("Game log closed");
+        Gatherer own = gatherer.get();
+        synchronized (own) {
+            if (own.buffer.remaining() < GameLog.MAX_RECORD) own.buffer = handOver(own.buffer);
+            GameLog.encode(board, opponent, own.buffer);
+        }
+    }
+    /**
+     * Hand a buffer to the appender, waiting only if QUEUED are waiting.
+     * @return an empty buffer to fill instead.
+     */
+    private ByteBuffer handOver(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        try {
+            full.put(buffer);
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Game log: interrupted");
+        }
+        synchronized (this) { handed++; }
+        ByteBuffer next = empty.poll();
+        return next != null ? next : ByteBuffer.allocateDirect(BUFFER);
+    }
+    /** Write out the buffers handed over, until told to stop. */
+    private void append() {
+        try {
+            for (ByteBuffer buffer; (buffer = full.take()) != END; ) {
+                try {
+                    while (buffer.hasRemaining()) channel.write(buffer);
+                } catch (IOException exc) {
+                    if (failure == null) failure = exc;
+                }
+                buffer.clear();
+                empty.add(buffer);
+                synchronized (this) {
+                    written++;
+                    notifyAll();
+                }
+            }
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    /** Hand over every thread's records, and wait until they are written. */
+    void flush() throws IOException {
+        for (Gatherer each : gatherers)
+            synchronized (each) {
+                if (each.buffer.position() > 0) each.buffer = handOver(each.buffer);
+            }
+        synchronized (this) {
+            try {
+                while (written < handed) wait();
+            } catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Game log: interrupted");
+            }
+        }
+        if (failure != null) throw failure;
+    }
+    /** Flush and close the file. */
+    @Override public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            flush();
+        } finally {
+            try {
+                full.put(END);
+                appender.join();
+            } catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+            }
+            channel.close();
+        }
+    }
+}
+/**
+ * A class streaming records from a log, 64 KB at a time.
+ * next() moves to the next record, which the accessors then describe;
+ * reading allocates nothing.
+ */
+class GameLogReader implements Closeable {
+    // Static fields:
+    /** The levels, by their code in the header. */
+    private static final Level[] LEVELS = Level.values();
+    // Fields:
+    /** The file. */
+    private final FileChannel channel;
+    /** Bytes read but not yet parsed. */
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+    /** Tells whether the whole file has been read. */
+    private boolean atEnd;
+    /** The level of the record. */
+    private Level level;
+    /** The level of the record's opponent, or null for a player. */
+    private Level opponent;
+    /** Tells whether the computer started the record's game. */
+    private boolean isCompStarted;
+    /** The result of the record's game. */
+    private char result;
+    /** The number of moves of the record's game. */
+    private int moveCount;
+    /** The moves of the record's game. */
+    private final byte[] moves = new byte[9];
+    /** Constructor given the file. */
+    GameLogReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        buffer.limit(0); // Nothing read yet
+        fill();
+        if (buffer.remaining() < 4 || buffer.getInt() != GameLog.MAGIC) {
+            channel.close();
+            throw new IOException("Not a game log: "+file);
+        }
+    }
+    // Accessors:
+    /** @return the level of the record. */
+    Level getLevel() { return level; }
+    /** @return the level of the record's opponent, or null for a player. */
+    Level getOpponent() { return opponent; }
+    /** @return if the computer started the record's game. */
+    boolean getIsCompStarted() { return isCompStarted; }
+    /** @return the result of the record's game, as Board.winner() gives it. */
+    char getResult() { return result; }
+    /** @return the number of moves of the record's game. */
+    int getMoveCount() { return moveCount; }
+    /** @return a move of the record's game, by its number from 0. */
+    int getMove(int turn) { return moves[turn]; }
+    // Methods:
+    /** Read until the buffer is full or the file ends. */
+    private void fill() throws IOException {
+        buffer.compact();
+        while (buffer.hasRemaining())
+            if (channel.read(buffer) < 0) {
+                atEnd = true;
+                break;
+            }
+        buffer.flip();
+    }
+    /**
+     * Move to the next record.
+     * @return false if there are no more.
+     */
+    boolean next() throws IOException {
+        if (buffer.remaining() < GameLog.MAX_RECORD && !atEnd) fill();
+        if (!buffer.hasRemaining()) return false;
+        int header = buffer.get();
+        level = LEVELS[header & 3];
+        isCompStarted = (header & 4) != 0;
+        result = GameLog.RESULTS.charAt(header >> 3 & 3);
+        opponent = (header & GameLog.PLAYER) != 0 ? null : LEVELS[header >> 5 & 3];
+        if (!buffer.hasRemaining()) throw new IOException("Truncated game log");
+        int b = buffer.get();
+        moveCount = b >> 4 & 15;
+        if (moveCount > 9 || buffer.remaining() < GameLog.recordLength(moveCount) - 2)
+            throw new IOException("Corrupt game log");
+        for (int i = 0; i < moveCount; i++) {
+            if ((i & 1) == 0) moves[i] = (byte) (b & 15);
+            else moves[i] = (byte) ((b = buffer.get()) >> 4 & 15);
+        }
+        return true;
+    }
+    /** @return a board with the record's game played on it. */
+    Board toBoard() {
+        Board board = new Board(isCompStarted, level);
+        for (int i = 0; i < moveCount; i++)
+            board.makeMove(Pair.byIndex(moves[i]), board.getIsCompTurn() ? 'X' : 'O');
+        return board;
+    }
+    /** Close the file. */
+    @Override public void close() throws IOException { channel.close(); }
+}
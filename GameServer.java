@@ -0,0 +1,310 @@
+/**
+ * @author Rohan
+ *
+ * A TCP server hosting many console-less games at once.
+ *
+ * The protocol is one line per request and one line per reply.
+ * Moves are numbers from 0 through 8, as in the console game:
+ *
+ *      NEW level [Y|N|R]   Start a game. Y: you go first, N: I do,
+ *                          R: choose randomly (as gfpCompFirstTurn).
+ *      MOVE n              Play space n.
+ *      QUIT                Close the connection.
+ *
+ * Every NEW and MOVE is answered by "OK m s", where m is the computer's
+ * move ('-' if it made none) and s the game's state after it, as
+ * Board.winner() gives it. Bad requests are answered by "ERROR reason".
+ *
+ * Run with -Dttt.gameLog=file to append every finished game to a GameLog,
+ * and with -Dttt.metrics=true to watch the engine through JMX (see
+ * EngineMetrics).
+ */
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Main class of the server. It accepts connections and hands them
+ * round-robin to a few ServerLoops, each a thread with its own
+ * non-blocking selector, so no thread is ever tied to one player.
+ * If accepting fails, as when the process runs out of file descriptors,
+ * it says so and tries again a little later, waiting longer each time
+ * up to MAX_BACKOFF, while the players already connected play on.
+ */
+class GameServer {
+    /** The longest wait before accepting again after a failure, in milliseconds. */
+    private static final long MAX_BACKOFF = 1000;
+    /**
+     * Start the server.
+     * Arguments: [port] [selector threads].
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 2013;
+        int threads = args.length > 1 ? Integer.parseInt(args[1])
+                    : Runtime.getRuntime().availableProcessors();
+        ServerLoop[] loops = new ServerLoop[threads];
+        for (int i = 0; i < threads; i++) {
+            loops[i] = new ServerLoop();
+            new Thread(loops[i], "server-loop-"+i).start();
+        }
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port), 4096);
+        System.out.println("Serving tic-tac-toe on port "+port);
+        long backoff = 0;
+        for (int next = 0; ; ) {
+            SocketChannel channel;
+            try {
+                channel = server.accept(); // Blocks for the next
+            } catch (IOException exc) {
+                backoff = Math.min(MAX_BACKOFF, Math.max(10, 2*backoff));
+                System.err.println("Accept: "+exc+"; trying again in "+backoff+" ms");
+                pause(backoff);
+                continue;
+            }
+            backoff = 0;
+            loops[next].add(channel);
+            next = (next + 1) % threads;
+        }
+    }
+    /** Wait some milliseconds, or less if interrupted. */
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
+/**
+ * A thread serving many connections through one selector.
+ * Each connection carries a Session; all moves are computed right here,
+ * since a move costs far less than handing it to another thread would.
+ */
+class ServerLoop implements Runnable {
+    // Fields:
+    /** The selector of the loop's connections. */
+    private final Selector selector;
+    /** Connections accepted, waiting to be registered. */
+    private final ConcurrentLinkedQueue<SocketChannel> added =
+        new ConcurrentLinkedQueue<>();
+    /** Random object for the levels' choices on this thread. */
+    private final Random rand = new Random();
+    /** Constructor. */
+    ServerLoop() throws IOException { selector = Selector.open(); }
+    // Methods:
+    /** Hand a connection to the loop. Called from the accepting thread. */
+    void add(SocketChannel channel) {
+        added.add(channel);
+        selector.wakeup();
+    }
+    /** Serve connections forever. */
+    @Override public void run() {
+        while (true) {
+            try {
+                selector.select();
+                for (SocketChannel channel; (channel = added.poll()) != null; ) {
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                    channel.register(selector, SelectionKey.OP_READ,
+                                     new Session(rand));
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    serve(key);
+                }
+            } catch (IOException exc) {
+                System.err.println("Server loop: "+exc);
+            }
+        }
+    }
+    /**
+     * Read what a connection sent, answer it, and write what is pending.
+     * While replies are pending, the connection is not read: a player
+     * who never reads its replies only stops its own requests.
+     */
+    private void serve(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Session session = (Session) key.attachment();
+        try {
+            if (key.isReadable()) {
+                if (channel.read(session.in) < 0) {
+                    close(key);
+                    return;
+                }
+                session.in.flip();
+                if (!session.readLines()) { // Too long, or too far behind
+                    close(key);
+                    return;
+                }
+                session.in.compact();
+            }
+            session.out.flip();
+            channel.write(session.out);
+            boolean pending = session.out.hasRemaining();
+            session.out.compact();
+            if (session.isQuitting() && !pending) close(key);
+            else key.interestOps(pending ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        } catch (IOException exc) {
+            close(key); // The player went away
+        }
+    }
+    /** Close a connection. */
+    private static void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException exc) {
+            // Closed already
+        }
+    }
+}
+/**
+ * The game of one connection: its Board, and its unparsed input
+ * and unsent output.
+ */
+class Session {
+    // Static fields:
+    /** The longest request line accepted. */
+    private static final int MAX_LINE = 256;
+    /** The most reply bytes kept for a player who is not reading. */
+    private static final int MAX_OUT = 1 << 16;
+    // Fields:
+    /** Bytes read but not yet parsed. */
+    final ByteBuffer in = ByteBuffer.allocate(MAX_LINE);
+    /** Replies not yet written. */
+    ByteBuffer out = ByteBuffer.allocate(1024);
+    /** The board of the current game, or null before the first. */
+    private Board board;
+    /** The line being read. */
+    private final StringBuilder line = new StringBuilder();
+    /** Tells whether the player asked to quit. */
+    private boolean quitting;
+    /** Random object shared with the rest of the session's thread. */
+    private final Random rand;
+    /** Constructor given the thread's Random. */
+    Session(Random rand) { this.rand = rand; }
+    // Accessors:
+    /** @return if the player asked to quit. */
+    boolean isQuitting() { return quitting; }
+    // Methods:
+    /**
+     * Parse every whole line in the input and queue the replies.
+     * @return false if a line is too long to be a request, or the
+     * replies not yet written pass MAX_OUT.
+     */
+    boolean readLines() {
+        while (in.hasRemaining() && !quitting) {
+            char c = (char) in.get();
+            if (c == '\n') {
+                if (!reply(handle(line.toString().trim()))) return false;
+                line.setLength(0);
+            } else if (c != '\r') {
+                if (line.length() == MAX_LINE) return false;
+                line.append(c);
+            }
+        }
+        return true;
+    }
+    /**
+     * Queue a reply line, growing the output if the player lags behind.
+     * @return false if the output would pass MAX_OUT.
+     */
+    private boolean reply(String reply) {
+        if (reply == null) return true;
+        byte[] bytes = (reply + "\n").getBytes(StandardCharsets.US_ASCII);
+        if (out.remaining() < bytes.length) {
+            if (out.position() + bytes.length > MAX_OUT) return false;
+            ByteBuffer bigger = ByteBuffer.allocate(
+                Math.min(MAX_OUT, 2*out.capacity() + bytes.length));
+            out.flip();
+            bigger.put(out);
+            out = bigger;
+        }
+        out.put(bytes);
+        return true;
+    }
+    /** @return the reply to a request, or null if there is none. */
+    String handle(String request) {
+        String[] words = request.split("\\s+");
+        switch (words[0].toUpperCase()) {
+            case "NEW":
+                return newGame(words);
+            case "MOVE":
+                return move(words);
+            case "QUIT":
+                quitting = true;
+                return null;
+            case "":
+                return null; // Blank lines are ignored
+            default:
+                return "ERROR Unknown request "+words[0];
+        }
+    }
+    /** Start a game. */
+    private String newGame(String[] words) {
+        Level level;
+        try {
+            level = Level.valueOf(words[1].toUpperCase());
+        } catch (Exception exc) {
+            return "ERROR Level must be EASY, MEDIUM, HARD or WIZARD";
+        }
+        char first = words.length > 2 ? Character.toUpperCase(words[2].charAt(0)) : 'Y';
+        if (first != 'Y' && first != 'N' && first != 'R')
+            return "ERROR Type Y to go first, N to not, or R to choose randomly";
+        boolean isCompFirst = first == 'N' || (first == 'R' && rand.nextBoolean());
+        board = new Board(isCompFirst, level, rand);
+        return isCompFirst ? computerMove() : "OK - P";
+    }
+    /** Play the player's move, and the computer's answer. */
+    private String move(String[] words) {
+        if (board == null) return "ERROR No game; send NEW first";
+        if (board.winner() != 'P') return "ERROR The game is over";
+        int n;
+        try {
+            n = Integer.parseInt(words[1]);
+        } catch (Exception exc) {
+            return "ERROR That is invalid input.";
+        }
+        if (n < 0 || n > 8 || !board.isOpen(Pair.byIndex(n)))
+            return "ERROR That is invalid input.";
+        board.makeMove(Pair.byIndex(n), 'O');
+        char winner = board.winner();
+        if (winner != 'P') {
+            log();
+            return "OK - "+winner;
+        }
+        return computerMove();
+    }
+    /** Make the computer's move. @return the reply telling it. */
+    private String computerMove() {
+        Pair move = board.move(board.getLevel());
+        board.makeMove(move, 'X');
+        if (board.winner() != 'P') log();
+        return "OK "+move.getIndex()+" "+board.winner();
+    }
+    /**
+     * Count the finished game's result in the EngineMetrics, and append
+     * the game to the game log, if there is one.
+     */
+    private void log() {
+        if (EngineMetrics.ENABLED) EngineMetrics.recordResult(board.getLevel(), board.winner());
+        GameLogWriter log = GameLogWriter.shared();
+        if (log == null) return;
+        try {
+            log.write(board, null); // Against a player, of no level
+        } catch (IOException exc) {
+            System.err.println("Game log: "+exc.getMessage());
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * @author Rohan
+ *
+ * Exact numbers for tic-tac-toe: every game counted, and every level's
+ * chances against every other worked out, not sampled.
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A class walking the game tree of Board, or one weighing of it.
+ *
+ * The tree is walked as the graph of its positions: a position reached by
+ * several orders of moves is worked out once, by its base-3 key (see
+ * Wizard.key), and its result is shared. A walk is weighted by two levels,
+ * the first playing 'X' and the second 'O': each move counts by the chance
+ * of its level playing it (see Board.moveChances), and the result of a
+ * position is the chance of each outcome. Unweighted, every move counts
+ * once, and the result is the number of games of each outcome.
+ *
+ * A game goes on until a line or a full board, as the usual count of
+ * 255,168 games has it. Board stops earlier, once every line is dead, but
+ * that changes no outcome.
+ *
+ * The first plies are forked over a ForkJoinPool, one subtree per move,
+ * each on its own board; below, each thread walks by making and taking
+ * back moves. Threads may race to work out a position; they work out the
+ * same result, and the first kept is as good as any.
+ */
+class GameTree {
+    // Static fields:
+    /** The number of position keys, 3 to the 9th. */
+    private static final int KEYS = 19683;
+    /** The plies near the start whose subtrees are forked. */
+    private static final int SPLIT = 2;
+    /** Result slots: 'X' wins, draws, 'O' wins. */
+    static final int X_WINS = 0, DRAWS = 1, O_WINS = 2;
+    /** The number of games, and of positions games end in. */
+    static final long GAMES = 255168, TERMINALS = 958;
+    // Fields:
+    /** The levels of 'X' and of 'O', or null to count every move once. */
+    private final Level xLevel, oLevel;
+    /** Tells whether 'X' starts. */
+    private final boolean isXStarted;
+    /** The result of each position worked out, by key. */
+    private final AtomicReferenceArray<double[]> results = new AtomicReferenceArray<>(KEYS);
+    /** Tells which positions games end in. */
+    private final boolean[] terminals = new boolean[KEYS];
+    /** Constructor given the levels, or nulls to count, and the starter. */
+    GameTree(Level xLevel, Level oLevel, boolean isXStarted) {
+        this.xLevel = xLevel;
+        this.oLevel = oLevel;
+        this.isXStarted = isXStarted;
+    }
+    // Accessors:
+    /** @return the number of positions games ended in, once walked. */
+    int terminalCount() {
+        int count = 0;
+        for (boolean terminal : terminals)
+            if (terminal) count++;
+        return count;
+    }
+    // Methods:
+    /** @return the result of the whole tree, walked over a pool. */
+    double[] walk(ForkJoinPool pool) {
+        return pool.invoke(new Subtree(new byte[0]));
+    }
+    /** @return the result of a position, walked from the board and left as it was. */
+    private double[] resultOf(Board board) {
+        int key = Wizard.key(board.getCompMask(), board.getUserMask());
+        double[] result = results.get(key);
+        if (result != null) return result;
+        result = new double[3];
+        if (isOver(board, key, result)) return result;
+        double[] weights = weightsOf(board);
+        for (int n = 0; n < 9; n++)
+            if (weights[n] > 0) {
+                board.makeMove(Pair.byIndex(n), board.getIsCompTurn() ? 'X' : 'O');
+                double[] next = resultOf(board);
+                board.undoMove();
+                for (int i = 0; i < 3; i++)
+                    result[i] += weights[n] * next[i];
+            }
+        results.compareAndSet(key, null, result);
+        return result;
+    }
+    /**
+     * @return if a game ends at the board, filling its result if so:
+     * one game, or a certainty, of its outcome.
+     */
+    private boolean isOver(Board board, int key, double[] result) {
+        boolean isXWon = Board.hasLine(board.getCompMask());
+        boolean isOWon = Board.hasLine(board.getUserMask());
+        if (!isXWon && !isOWon && board.getOpenMask() != 0) return false;
+        terminals[key] = true;
+        result[isXWon ? X_WINS : isOWon ? O_WINS : DRAWS] = 1;
+        results.compareAndSet(key, null, result);
+        return true;
+    }
+    /** @return how much each space counts as the move at the board. */
+    private double[] weightsOf(Board board) {
+        if (xLevel != null)
+            return board.moveChances(board.getIsCompTurn() ? xLevel : oLevel);
+        double[] weights = new double[9];
+        for (int n = 0; n < 9; n++)
+            if ((board.getOpenMask() & 1 << n) != 0) weights[n] = 1;
+        return weights;
+    }
+    /** The walk of the subtree after some moves from the start. */
+    private class Subtree extends RecursiveTask<double[]> {
+        /** A task is serializable, but this one is never serialized. */
+        private static final long serialVersionUID = 1L;
+        /** The moves, as numerical coordinates. */
+        private final byte[] moves;
+        /** Constructor given the moves. */
+        Subtree(byte[] moves) { this.moves = moves; }
+        @Override protected double[] compute() {
+            Board board = new Board(isXStarted, Level.WIZARD);
+            for (byte move : moves)
+                board.makeMove(Pair.byIndex(move), board.getIsCompTurn() ? 'X' : 'O');
+            if (moves.length >= SPLIT) return resultOf(board);
+            int key = Wizard.key(board.getCompMask(), board.getUserMask());
+            double[] result = new double[3];
+            if (isOver(board, key, result)) return result;
+            double[] weights = weightsOf(board);
+            Subtree[] parts = new Subtree[9];
+            for (int n = 0; n < 9; n++)
+                if (weights[n] > 0) {
+                    byte[] next = Arrays.copyOf(moves, moves.length + 1);
+                    next[moves.length] = (byte) n;
+                    parts[n] = new Subtree(next);
+                    parts[n].fork();
+                }
+            for (int n = 8; n >= 0; n--) // Joined newest first
+                if (parts[n] != null) {
+                    double[] part = parts[n].join();
+                    for (int i = 0; i < 3; i++)
+                        result[i] += weights[n] * part[i];
+                }
+            return result;
+        }
+    }
+    /**
+     * Count every game, then work out every level's chances against
+     * every other, first as 'X' and second as 'O', each starting half
+     * the games as Simulator plays them. Given "check", exit with status 1
+     * unless the counts are the known ones and the wizard never loses,
+     * so this can guard the levels in a build.
+     * Arguments: [check] [threads].
+     */
+    public static void main(String[] args) {
+        boolean check = args.length > 0 && args[0].equalsIgnoreCase("check");
+        int at = check ? 1 : 0;
+        int threads = args.length > at ? Integer.parseInt(args[at])
+                    : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        boolean failed = false;
+        long start = System.nanoTime();
+        GameTree tree = new GameTree(null, null, true);
+        double[] games = tree.walk(pool);
+        long total = Math.round(games[X_WINS] + games[DRAWS] + games[O_WINS]);
+        System.out.printf("%d games (%.0f won by X, %.0f drawn, %.0f won by O), "
+            + "%d terminal positions, in %.1f ms%n", total, games[X_WINS],
+            games[DRAWS], games[O_WINS], tree.terminalCount(),
+            (System.nanoTime() - start) / 1e6);
+        if (total != GAMES || tree.terminalCount() != TERMINALS) {
+            System.err.println("Expected "+GAMES+" games and "+TERMINALS+" terminal positions");
+            failed = true;
+        }
+        System.out.println("\nX\tO\twins\t\tdraws\t\tlosses\t\tms");
+        for (Level first : Level.values())
+            for (Level second : Level.values()) {
+                start = System.nanoTime();
+                double[] xFirst = new GameTree(first, second, true).walk(pool);
+                double[] oFirst = new GameTree(first, second, false).walk(pool);
+                double[] result = new double[3];
+                for (int i = 0; i < 3; i++)
+                    result[i] = (xFirst[i] + oFirst[i]) / 2;
+                System.out.printf("%s\t%s\t%.10f\t%.10f\t%.10f\t%.1f%n", first, second,
+                    result[X_WINS], result[DRAWS], result[O_WINS],
+                    (System.nanoTime() - start) / 1e6);
+                if (first == Level.WIZARD && result[O_WINS] != 0
+                    || second == Level.WIZARD && result[X_WINS] != 0) {
+                    System.err.println("The wizard lost a game: "+first+" against "+second);
+                    failed = true;
+                }
+            }
+        pool.shutdown();
+        if (check && failed) System.exit(1);
+    }
+}
@@ -0,0 +1,692 @@
+/**
+ * @author Rohan
+ *
+ * Unlimited tic-tac-toe: k in a row on a board with no edges.
+ */
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A class representing an unlimited board.
+ *
+ * Cells are pairs of ints packed into a long (see key), and the stones
+ * live in a LongByteMap, so the board takes memory for the stones
+ * played, however far apart, and looking a cell up boxes nothing.
+ * A second map counts, for each cell, the stones within two cells of
+ * it; the cells it holds which are open are the candidate moves, so
+ * they are listed without looking at the rest of the plane. The
+ * bounding box of the stones is kept move by move, and restored on undo.
+ *
+ * The wizard level looks for a forced win by threat-space search: the
+ * attacker only plays threats, and the defender only the replies which
+ * answer them (see attack), so the tree stays small even when the
+ * winning sequence is long.
+ *
+ * Computer is always 'X', user is always 'O'.
+ */
+class InfiniteBoard {
+    // Static fields:
+    /** Cell contents. */
+    static final byte EMPTY = 0, X = 1, O = 2;
+    /** The four directions a line can run in, as {dx, dy}. */
+    private static final int[][] directions = {
+        { 1, 0 }, { 0, 1 }, { 1, 1 }, { 1, -1 }
+    };
+    /** How far from a stone a move may be to be a candidate. */
+    private static final int REACH = 2;
+    /** The most attacking moves a threat search looks ahead. */
+    private static final int THREAT_DEPTH = 7;
+    /** The most positions a threat search visits. */
+    private static final int THREAT_NODES = 1500;
+    /** The most positions a threat search visits to test a defence. */
+    private static final int DEFENCE_NODES = 500;
+    /** The most moves the wizard tries against a threatened forced win. */
+    private static final int DEFENCES = 10;
+    /** What replies() gives for a move making two fours at once. */
+    private static final int TWO_FOURS = Integer.MAX_VALUE;
+    // Fields:
+    /** The length of a winning line. */
+    private final int k;
+    /** The stones, by cell. */
+    private final LongByteMap stones = new LongByteMap();
+    /** For each cell near a stone, the number of stones within REACH. */
+    private final LongByteMap near = new LongByteMap();
+    /** The cells played, in order. */
+    private long[] moveSeq = new long[64];
+    /** The bounding box before each move: minX, maxX, minY, maxY. */
+    private int[] boxes = new int[4*64];
+    /** The bounding box of the stones. */
+    private int minX, maxX, minY, maxY;
+    /** The number of moves played. */
+    private int plies;
+    /** The winner so far, as winner() gives it. */
+    private char winner = 'P';
+    /** The number of moves after which the game is drawn. */
+    private int moveLimit = 1000;
+    /** Tells whether it is the computer's turn. */
+    private boolean isCompTurn;
+    /** Tells whether the computer started. */
+    private final boolean isCompStarted;
+    /** A level object, which tells which level is being played. */
+    private final Level level;
+    /** Random object used to determine a random choice of move. */
+    private final Random rand;
+    /** Candidate lists per ply of threat search, grown as needed. */
+    private long[][] lists = new long[THREAT_DEPTH * 2 + 3][64];
+    /** The defender's moves making a four, per ply of threat search. */
+    private long[][] counters = new long[THREAT_DEPTH * 2 + 3][64];
+    /** The grades of the candidates, per ply of threat search. */
+    private int[][] grades = new int[THREAT_DEPTH * 2 + 3][64];
+    /** The cells of a line through a cell, centre at k-1. */
+    private final byte[] line;
+    /** Positions the current threat search may still visit. */
+    private int threatNodes;
+    /** Tells whether the attacker may only make fours, not threes. */
+    private boolean foursOnly;
+    /** The first move of the last attack found to win. */
+    private long attackMove = -1;
+    /** Constructor given k, level and starter. */
+    InfiniteBoard(int k, boolean isCompStarted, Level level) {
+        this(k, isCompStarted, level, new Random());
+    }
+    /** Constructor given k, level, starter and the Random to choose moves by. */
+    InfiniteBoard(int k, boolean isCompStarted, Level level, Random rand) {
+        if (k < 3) throw new IllegalArgumentException("k must be 3 or more, not "+k);
+        this.k = k;
+        this.line = new byte[2*k - 1];
+        this.isCompStarted = isCompStarted;
+        this.isCompTurn = isCompStarted;
+        this.level = level;
+        this.rand = rand;
+    }
+    // Accessors:
+    /** @return the length of a winning line. */
+    int getK() { return k; }
+    /** @return level of board. */
+    Level getLevel() { return level; }
+    /** @return if it is the computer's turn. */
+    boolean getIsCompTurn() { return isCompTurn; }
+    /** @return the number of moves played. */
+    int getPlies() { return plies; }
+    /** @return the least column of any stone. */
+    int getMinX() { return minX; }
+    /** @return the greatest column of any stone. */
+    int getMaxX() { return maxX; }
+    /** @return the least row of any stone. */
+    int getMinY() { return minY; }
+    /** @return the greatest row of any stone. */
+    int getMaxY() { return maxY; }
+    /** @return the slots the board's maps take, which grow with the stones. */
+    int getCapacity() { return stones.capacity() + near.capacity(); }
+    /**
+     * @return whatever character of the winner.
+     * @return 'X' means the comp won.
+     * @return 'O' means the user won.
+     * @return 'D' means the move limit was reached.
+     * @return 'P' means the game is still in progress.
+     */
+    char winner() { return winner; }
+    /** Set the number of moves after which the game is drawn. */
+    void setMoveLimit(int moveLimit) { this.moveLimit = moveLimit; }
+    // Methods:
+    /** @return a cell's key. Coordinates must lie within +-2^30. */
+    static long key(int x, int y) { return (long) x << 32 | (y & 0xFFFFFFFFL); }
+    /** @return the column of a key. */
+    static int x(long key) { return (int) (key >> 32); }
+    /** @return the row of a key. */
+    static int y(long key) { return (int) key; }
+    /** @return the stone on a cell, or EMPTY. */
+    byte stoneAt(int x, int y) { return stones.get(key(x, y)); }
+    /** Get an 'X', 'O' or ' ' for a cell. */
+    char refer(int x, int y) {
+        byte stone = stoneAt(x, y);
+        return stone == X ? 'X' : stone == O ? 'O' : ' ';
+    }
+    /** Printable version of board: the bounding box and a cell around it. */
+    @Override public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (plies == 0) return "\n\t\t(empty)";
+        for (int y = maxY + 1; y >= minY - 1; y--) {
+            sb.append(String.format("%n%6d ", y));
+            for (int x = minX - 1; x <= maxX + 1; x++)
+                sb.append(refer(x, y) == ' ' ? '.' : refer(x, y));
+        }
+        return sb.toString();
+    }
+    /** Play a cell for the side to move. */
+    void makeMove(long cell) {
+        byte stone = isCompTurn ? X : O;
+        int x = x(cell), y = y(cell);
+        if (plies == moveSeq.length) {
+            moveSeq = Arrays.copyOf(moveSeq, 2*plies);
+            boxes = Arrays.copyOf(boxes, 8*plies);
+        }
+        boxes[4*plies] = minX;   boxes[4*plies + 1] = maxX;
+        boxes[4*plies + 2] = minY;   boxes[4*plies + 3] = maxY;
+        if (plies == 0) {
+            minX = maxX = x;
+            minY = maxY = y;
+        } else {
+            minX = Math.min(minX, x);   maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);   maxY = Math.max(maxY, y);
+        }
+        moveSeq[plies++] = cell;
+        stones.put(cell, stone);
+        for (int dy = -REACH; dy <= REACH; dy++)
+            for (int dx = -REACH; dx <= REACH; dx++)
+                near.add(key(x + dx, y + dy), 1);
+        if (longestRun(x, y, stone) >= k) winner = stone == X ? 'X' : 'O';
+        else if (plies >= moveLimit) winner = 'D';
+        isCompTurn = !isCompTurn;
+    }
+    /** Take back the last move. */
+    void undoMove() {
+        long cell = moveSeq[--plies];
+        int x = x(cell), y = y(cell);
+        stones.remove(cell);
+        for (int dy = -REACH; dy <= REACH; dy++)
+            for (int dx = -REACH; dx <= REACH; dx++)
+                near.add(key(x + dx, y + dy), -1);
+        minX = boxes[4*plies];   maxX = boxes[4*plies + 1];
+        minY = boxes[4*plies + 2];   maxY = boxes[4*plies + 3];
+        winner = 'P';
+        isCompTurn = !isCompTurn;
+    }
+    /**
+     * @return the longest line a stone on a cell would be part of,
+     * counting the cell itself, whatever is on it.
+     */
+    private int longestRun(int x, int y, byte stone) {
+        int longest = 0;
+        for (int[] d : directions) {
+            int run = 1;
+            for (int i = 1; i < k && stoneAt(x + i*d[0], y + i*d[1]) == stone; i++) run++;
+            for (int i = 1; i < k && stoneAt(x - i*d[0], y - i*d[1]) == stone; i++) run++;
+            longest = Math.max(longest, run);
+        }
+        return longest;
+    }
+    /**
+     * List the open cells within REACH of a stone: the moves worth
+     * considering. On the empty board, the only one is the origin.
+     * @return the list, in a buffer which may be replaced to grow it.
+     */
+    private long[] candidates(int ply) {
+        long[] list = lists[ply];
+        if (list.length < near.size() + 2) list = lists[ply] = new long[2*near.size() + 2];
+        int count = 0;
+        if (plies == 0) list[count++] = key(0, 0);
+        else for (int slot = 0; slot < near.capacity(); slot++) {
+            if (near.valueAt(slot) == 0) continue;
+            long cell = near.keyAt(slot);
+            if (stones.get(cell) == EMPTY) list[count++] = cell;
+        }
+        list[list.length - 1] = count; // The count rides at the end
+        return list;
+    }
+    /** @return the number of candidates listed by candidates(). */
+    private static int count(long[] list) { return (int) list[list.length - 1]; }
+    /** Read the 2k-1 cells of a line centred on a cell into line[]. */
+    private void readLine(int x, int y, int[] d) {
+        for (int i = 0; i < line.length; i++)
+            line[i] = stoneAt(x + (i - k + 1)*d[0], y + (i - k + 1)*d[1]);
+    }
+    /**
+     * @return what a cell is worth to each side as a threat: the most
+     * stones the side to move would have in a line of k through it with
+     * none of the other's, counting the cell, and above the lowest 8
+     * bits the same for the other side.
+     */
+    private int grade(int x, int y, byte own) {
+        int mineBest = 0, theirsBest = 0;
+        for (int[] d : directions) {
+            readLine(x, y, d);
+            int mine = 0, theirs = 0;
+            for (int i = 0; i < line.length; i++) {
+                // Slide the window of k on by one cell
+                if (line[i] == own) mine++;
+                else if (line[i] != EMPTY) theirs++;
+                if (i >= k) {
+                    if (line[i - k] == own) mine--;
+                    else if (line[i - k] != EMPTY) theirs--;
+                }
+                if (i < k - 1) continue;
+                if (theirs == 0) mineBest = Math.max(mineBest, mine + 1);
+                if (mine == 0) theirsBest = Math.max(theirsBest, theirs + 1);
+            }
+        }
+        return mineBest | theirsBest << 8;
+    }
+    /**
+     * Add to a list the open cells which would complete a line of k for
+     * a side, in the lines through a cell.
+     * @return the new length of the list.
+     */
+    private int winsThrough(int x, int y, byte stone, long[] out, int count) {
+        for (int[] d : directions)
+            for (int s = -(k - 1); s <= 0; s++) {
+                int own = 0;
+                long open = 0;
+                for (int i = s; i < s + k; i++) {
+                    int cx = x + i*d[0], cy = y + i*d[1];
+                    byte b = stoneAt(cx, cy);
+                    if (b == stone) own++;
+                    else if (b == EMPTY) open = key(cx, cy);
+                    else { own = -1; break; }
+                }
+                if (own == k - 1) count = addOnce(out, count, open);
+            }
+        return count;
+    }
+    /** Add a cell to a list unless it is there. @return the new length. */
+    private static int addOnce(long[] out, int count, long cell) {
+        for (int i = 0; i < count; i++) if (out[i] == cell) return count;
+        out[count++] = cell;
+        return count;
+    }
+    /** @return a cell where a side wins at once, or -1 if none. */
+    private long winningCell(byte stone, long[] list) {
+        for (int i = 0, n = count(list); i < n; i++)
+            if (longestRun(x(list[i]), y(list[i]), stone) >= k) return list[i];
+        return -1;
+    }
+    /**
+     * Threat-space search: can the side to move, the attacker, force a
+     * win by making threats the defender must answer, at every step?
+     *
+     * A four (a line one short) must be blocked at its open cell; two at
+     * once win. A three is a move after which some follow-up would make
+     * two fours; the defender must take that follow-up or one of its
+     * fours' cells, or else lose. Replies making a four of the
+     * defender's own are searched too, as the attacker must block them.
+     * @return true if a win is forced within depth attacking moves.
+     */
+    private boolean attack(int depth, int ply) {
+        if (--threatNodes < 0) return false;
+        byte own = isCompTurn ? X : O;
+        long[] list = candidates(ply);
+        int n = count(list);
+        if (grades[ply].length < n) grades[ply] = new int[list.length];
+        int[] grade = grades[ply];
+        long block = -1;
+        int blocks = 0;
+        for (int i = 0; i < n; i++) {
+            grade[i] = grade(x(list[i]), y(list[i]), own);
+            if ((grade[i] & 255) >= k) return true;
+            if (grade[i] >> 8 >= k) {
+                block = list[i];
+                blocks++;
+            }
+        }
+        if (depth <= 0 || blocks >= 2) return false;
+        // The defender's moves making a four; the attacker's threats add none
+        long[] fours = counters[ply];
+        int counts = 0;
+        for (int i = 0; i < n; i++)
+            if (grade[i] >> 8 >= k - 1 && list[i] != block) {
+                if (counts == fours.length) fours = counters[ply] = Arrays.copyOf(fours, 2*counts);
+                fours[counts++] = list[i];
+            }
+        if (block != -1) {
+            // Forced to block: it must make a four, or the attack is over
+            makeMove(block);
+            long[] wins = lists[ply + 1];
+            int made = winsThrough(x(block), y(block), own, wins, 0);
+            boolean won = made >= 2 || made == 1 && defend(wins, 1, counts, depth, ply);
+            undoMove();
+            return won;
+        }
+        for (int i = 0; i < n && threatNodes >= 0; i++) {
+            if ((grade[i] & 255) < (foursOnly ? k - 1 : k - 2)) continue; // No threat
+            long move = list[i];
+            stones.put(move, own); // Just to look, until it proves a threat
+            int count = replies(move, own, ply);
+            stones.remove(move);
+            if (count == 0) continue;
+            boolean won = count == TWO_FOURS;
+            if (!won) {
+                makeMove(move);
+                won = defend(lists[ply + 1], count, counts, depth, ply);
+                undoMove();
+            }
+            if (won) {
+                attackMove = move;
+                return true;
+            }
+        }
+        return false;
+    }
+    /**
+     * Look for a forced win of the side to move, within a budget of
+     * positions: first by fours alone, which give the defender no choice,
+     * then by threes as well, each deeper and deeper so that the
+     * shortest wins are found first.
+     * @return true if one is found; attackMove is then its first move.
+     */
+    private boolean threatSearch(int nodes, int ply) {
+        threatNodes = nodes;
+        for (int pass = 0; pass < 2; pass++) {
+            foursOnly = pass == 0;
+            for (int depth = 1; depth <= THREAT_DEPTH && threatNodes >= 0; depth++)
+                if (attack(depth, ply)) return true;
+            threatNodes = Math.max(threatNodes, nodes / 2); // Threes get their share
+        }
+        return false;
+    }
+    /**
+     * After an attacking move, list in lists[ply + 1] the defender's
+     * replies which answer it, short of making fours of its own.
+     * @return the number listed: 0 if the move threatens nothing, or
+     * TWO_FOURS if it threatens too much to answer.
+     */
+    private int replies(long move, byte own, int ply) {
+        long[] replies = lists[ply + 1];
+        int count = winsThrough(x(move), y(move), own, replies, 0);
+        if (count >= 2) return TWO_FOURS;
+        if (count == 0) { // A three, if it threatens two fours
+            // The follow-ups: the open cells of its lines of k-2
+            long[] follow = lists[ply + 3];
+            int follows = 0;
+            for (int[] d : directions) {
+                readLine(x(move), y(move), d);
+                for (int s = 0; s < k; s++) {
+                    int mine = 0;
+                    for (int i = s; i < s + k; i++)
+                        if (line[i] == own) mine++;
+                        else if (line[i] != EMPTY) { mine = -1; break; }
+                    if (mine != k - 2) continue;
+                    for (int i = s; i < s + k; i++)
+                        if (line[i] == EMPTY)
+                            follows = addOnce(follow, follows, key(x(move) + (i - k + 1)*d[0],
+                                                                   y(move) + (i - k + 1)*d[1]));
+                }
+            }
+            long[] wins = lists[ply + 2];
+            for (int i = 0; i < follows; i++) {
+                long f = follow[i];
+                stones.put(f, own); // Just to look: the attacker moves again
+                int fours = winsThrough(x(f), y(f), own, wins, 0);
+                stones.remove(f);
+                if (fours < 2) continue;
+                if (count + fours + 1 > replies.length - 1) break; // Enough
+                count = addOnce(replies, count, f);
+                for (int j = 0; j < fours; j++) count = addOnce(replies, count, wins[j]);
+            }
+        }
+        return count;
+    }
+    /**
+     * Search every reply of the defender: the given ones, and those of
+     * counters[ply], the moves which make a four of its own.
+     * @return true if every reply loses.
+     */
+    private boolean defend(long[] replies, int count, int counts, int depth, int ply) {
+        long[] fours = counters[ply];
+        for (int i = 0; i < counts && count < replies.length - 1; i++)
+            if (stones.get(fours[i]) == EMPTY) count = addOnce(replies, count, fours[i]);
+        for (int i = 0; i < count; i++) {
+            long reply = replies[i];
+            makeMove(reply);
+            boolean won = winner == 'P' && attack(depth - 1, ply + 2);
+            undoMove();
+            if (!won) return false;
+        }
+        return true;
+    }
+    /**
+     * @return a cell's worth for the side to move: every line of k
+     * through it counts for each side which alone has stones in it,
+     * four times more for every stone.
+     */
+    private int worth(int x, int y, byte own) {
+        int score = 0;
+        for (int[] d : directions) {
+            readLine(x, y, d);
+            int mine = 0, theirs = 0;
+            for (int i = 0; i < line.length; i++) {
+                if (line[i] == own) mine++;
+                else if (line[i] != EMPTY) theirs++;
+                if (i >= k) {
+                    if (line[i - k] == own) mine--;
+                    else if (line[i - k] != EMPTY) theirs--;
+                }
+                if (i < k - 1) continue;
+                if (theirs == 0) score += 1 << 2*mine;
+                else if (mine == 0) score += 3 << 2*theirs >> 2; // Blocking
+            }
+        }
+        return score;
+    }
+    /** @return the candidate of the greatest worth, ties broken at random. */
+    private long bestByWorth(long[] list) {
+        byte own = isCompTurn ? X : O;
+        long best = list[0];
+        int bestScore = -1, ties = 0;
+        for (int i = 0, n = count(list); i < n; i++) {
+            int score = worth(x(list[i]), y(list[i]), own);
+            if (score > bestScore) {
+                bestScore = score;
+                best = list[i];
+                ties = 1;
+            } else if (score == bestScore && rand.nextInt(++ties) == 0) {
+                best = list[i];
+            }
+        }
+        return best;
+    }
+    /** @return a cell winning at once, else one blocking such a cell, else -1. */
+    private long winOrBlock(long[] list) {
+        long cell = winningCell(isCompTurn ? X : O, list);
+        return cell != -1 ? cell : winningCell(isCompTurn ? O : X, list);
+    }
+    /**
+     * @return the move of a level, for the side to move.
+     * With MoveProfiler enabled, the move's allocation is accounted;
+     * with EngineMetrics enabled, its time is recorded.
+     */
+    long move(Level level) {
+        if (!MoveProfiler.ENABLED && !EngineMetrics.ENABLED) return choose(level);
+        long before = MoveProfiler.ENABLED ? MoveProfiler.start() : 0;
+        long start = System.nanoTime();
+        long move = choose(level);
+        if (EngineMetrics.ENABLED) EngineMetrics.recordMove(level, System.nanoTime() - start);
+        if (MoveProfiler.ENABLED) MoveProfiler.end(level, before);
+        return move;
+    }
+    /** @return the move of a level, for the side to move. */
+    private long choose(Level level) {
+        switch (level) {
+            case EASY:   return levelEasy();
+            case MEDIUM: return levelMedium();
+            case HARD:   return levelHard();
+            default:     return levelWizard();
+        }
+    }
+    /** The easy level's move. Easy chooses a random candidate. */
+    long levelEasy() {
+        long[] list = candidates(0);
+        return list[rand.nextInt(count(list))];
+    }
+    /**
+     * The medium level's move.
+     * Medium plays like a normal human. Win or block, or play randomly.
+     */
+    long levelMedium() {
+        long cell = winOrBlock(candidates(0));
+        return cell != -1 ? cell : levelEasy();
+    }
+    /** The hard level's move: win or block, or the cell of most worth. */
+    long levelHard() {
+        long[] list = candidates(0);
+        long cell = winOrBlock(list);
+        return cell != -1 ? cell : bestByWorth(list);
+    }
+    /**
+     * The wizard level's move: win or block, or start a forced win found
+     * by threat-space search. Else, if the other side would have a forced
+     * win were it to move, play the cell of most worth which stops it, or
+     * else just the cell of most worth.
+     */
+    long levelWizard() {
+        long[] list = candidates(0);
+        long cell = winOrBlock(list);
+        if (cell != -1) return cell;
+        if (plies > 0 && threatSearch(THREAT_NODES, 0)) return attackMove;
+        isCompTurn = !isCompTurn; // Pass, to see what the other side threatens
+        boolean threatened = plies > 0 && threatSearch(THREAT_NODES, 0);
+        isCompTurn = !isCompTurn;
+        list = candidates(0);
+        return threatened ? bestDefence(list, attackMove) : bestByWorth(list);
+    }
+    /**
+     * @return the first of the DEFENCES likeliest cells after which the
+     * other side has no forced win, or the likeliest if every one fails.
+     * The likeliest is the first move of the other side's win; the rest
+     * go by the lines they would spoil for it, then by worth.
+     */
+    private long bestDefence(long[] list, long threat) {
+        byte own = isCompTurn ? X : O;
+        int n = count(list);
+        int[] scores = new int[n];
+        for (int i = 0; i < n; i++)
+            scores[i] = list[i] == threat ? Integer.MAX_VALUE
+                : (grade(x(list[i]), y(list[i]), own) >> 8) << 24 | worth(x(list[i]), y(list[i]), own);
+        long first = -1;
+        for (int tried = 0; tried < Math.min(n, DEFENCES); tried++) {
+            int best = 0;
+            for (int i = 1; i < n; i++) if (scores[i] > scores[best]) best = i;
+            long cell = list[best];
+            scores[best] = -1;
+            if (first == -1) first = cell;
+            makeMove(cell);
+            boolean lost = threatSearch(DEFENCE_NODES, 1);
+            undoMove();
+            if (!lost) return cell;
+        }
+        return first;
+    }
+    /**
+     * Play the hard level against the wizard and print the results and
+     * the costs of moving.
+     * Arguments: [games] [k].
+     */
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int k = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        Random rand = new Random(2013);
+        int[] results = new int[3];
+        long plies = 0, listNanos = 0, lists = 0, worstMove = 0;
+        int capacity = 0;
+        for (int g = 0; g < games; g++) {
+            InfiniteBoard board = new InfiniteBoard(k, g % 2 == 0, Level.WIZARD, rand);
+            while (board.winner() == 'P') {
+                long start = System.nanoTime();
+                board.candidates(0);
+                listNanos += System.nanoTime() - start;
+                lists++;
+                start = System.nanoTime();
+                long move = board.move(board.getIsCompTurn() ? Level.WIZARD : Level.HARD);
+                worstMove = Math.max(worstMove, System.nanoTime() - start);
+                board.makeMove(move);
+            }
+            results["XDO".indexOf(board.winner())]++;
+            plies += board.getPlies();
+            capacity = Math.max(capacity, board.getCapacity());
+            if (g == 0) System.out.println(board);
+        }
+        System.out.printf("wizard vs hard, k=%d: %d wins, %d draws, %d losses, "
+            + "%.1f moves/game%n", k, results[0], results[1], results[2],
+            plies / (double) games);
+        System.out.printf("candidates listed in %.1f us on average; slowest move %.1f ms; "
+            + "largest maps %d slots%n", listNanos / 1e3 / lists, worstMove / 1e6, capacity);
+    }
+}
+/**
+ * An open-addressed hash map from long keys to non-zero bytes, with
+ * linear probing and no boxing. A value of 0 marks an empty slot, so
+ * storing 0 removes a key. Removal shifts later entries back, so the
+ * map never fills with tombstones and shrinks nothing but its entries.
+ */
+class LongByteMap {
+    // Fields:
+    /** The key in each slot. */
+    private long[] keys = new long[16];
+    /** The value in each slot, 0 if the slot is empty. */
+    private byte[] values = new byte[16];
+    /** The number of entries. */
+    private int size;
+    /** 64 less the log of the number of slots, to take a hash's top bits. */
+    private int shift = 60;
+    // Accessors:
+    /** @return the number of entries. */
+    int size() { return size; }
+    /** @return the number of slots. */
+    int capacity() { return keys.length; }
+    /** @return the key in a slot, if its value is not 0. */
+    long keyAt(int slot) { return keys[slot]; }
+    /** @return the value in a slot, or 0 if it is empty. */
+    byte valueAt(int slot) { return values[slot]; }
+    // Methods:
+    /** @return the slot a key starts looking from. */
+    private int home(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+    /** @return the slot holding a key, or the empty slot ending its run. */
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int slot = home(key);
+        while (values[slot] != 0 && keys[slot] != key) slot = (slot + 1) & mask;
+        return slot;
+    }
+    /** @return the value of a key, or 0 if it has none. */
+    byte get(long key) { return values[find(key)]; }
+    /** Set the value of a key; 0 removes it. */
+    void put(long key, byte value) {
+        int slot = find(key);
+        if (value == 0) {
+            if (values[slot] != 0) removeAt(slot);
+            return;
+        }
+        if (values[slot] == 0) {
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+        if (2*size > keys.length) grow();
+    }
+    /** Add to the value of a key, removing it if that makes 0. */
+    void add(long key, int delta) { put(key, (byte) (get(key) + delta)); }
+    /** Remove a key. */
+    void remove(long key) { put(key, (byte) 0); }
+    /** Empty a slot, shifting back the entries after it which may. */
+    private void removeAt(int hole) {
+        int mask = keys.length - 1;
+        size--;
+        for (int slot = (hole + 1) & mask; values[slot] != 0; slot = (slot + 1) & mask) {
+            int home = home(keys[slot]);
+            // Move it back unless its home lies after the hole, up to it
+            boolean stays = hole <= slot ? hole < home && home <= slot
+                                         : hole < home || home <= slot;
+            if (stays) continue;
+            keys[hole] = keys[slot];
+            values[hole] = values[slot];
+            hole = slot;
+        }
+        values[hole] = 0;
+    }
+    /** Double the slots. */
+    private void grow() {
+        long[] oldKeys = keys;
+        byte[] oldValues = values;
+        keys = new long[2*oldKeys.length];
+        values = new byte[2*oldKeys.length];
+        shift--;
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldValues[i] != 0) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+    }
+}
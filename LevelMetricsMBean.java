@@ -0,0 +1,27 @@
+/**
+ * @author Rohan
+ *
+ * The management interface of one level's metrics. JMX requires it public.
+ */
+
+/** How one level has played, as seen through JMX. */
+public interface LevelMetricsMBean {
+    /** @return the moves chosen. */
+    long getMoves();
+    /** @return the mean time to choose a move, in microseconds. */
+    double getMeanMicros();
+    /** @return the median time to choose a move, in microseconds. */
+    double getP50Micros();
+    /** @return the 99th percentile time to choose a move, in microseconds. */
+    double getP99Micros();
+    /** @return the 99.9th percentile time to choose a move, in microseconds. */
+    double getP999Micros();
+    /** @return the longest time to choose a move, in microseconds. */
+    double getMaxMicros();
+    /** @return the games the level won as the computer. */
+    long getWins();
+    /** @return the games the level drew as the computer. */
+    long getDraws();
+    /** @return the games the level lost as the computer. */
+    long getLosses();
+}
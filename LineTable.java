@@ -0,0 +1,253 @@
+/**
+ * @author Rohan
+ *
+ * The winning lines of a board, worked out once per shape and shared
+ * by every game on it.
+ */
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A class holding the lines of k of some board, as flat arrays of cell
+ * numbers, and for each cell the lines through it. MNKBoard plays on any
+ * LineTable, so once a table is made, wins, move generation and the
+ * search cost the same whatever the board's shape: wrap-around is
+ * worked out here, never while playing.
+ *
+ * Grids are m columns by n rows, cells numbered row by row as on
+ * MNKBoard. A grid's edges may be glued together (see Topology). The
+ * star is a pentagram: five tips (cells 0-4) and the five points where
+ * its lines cross (cells 5-9), four cells to each of its five lines,
+ * printed as one row.
+ *
+ * Tables are immutable and cached, so asking for one twice is cheap.
+ */
+class LineTable {
+    /** The ways the edges of an m by n grid can be glued together. */
+    enum Topology {
+        /** No edges glued: the plain m,n,k game. */
+        PLANE,
+        /** The left and right edges glued: a tube. */
+        CYLINDER,
+        /** Left to right and top to bottom: a doughnut. */
+        TORUS,
+        /** Left to right, and top to bottom with a flip. */
+        KLEIN
+    }
+    // Static fields:
+    /** The eight directions a line can leave a cell in, as {dx, dy}. */
+    private static final int[][] directions = {
+        { 1, 0 }, { 0, 1 }, { 1, 1 }, { 1, -1 },
+        { -1, 0 }, { 0, -1 }, { -1, -1 }, { -1, 1 }
+    };
+    /** Seed of the Zobrist keys, fixed so that hashes are reproducible. */
+    private static final long ZOBRIST_SEED = 0x7E57AB1EL;
+    /** Every table made so far, by its name. */
+    private static final ConcurrentHashMap<String, LineTable> cache =
+        new ConcurrentHashMap<>();
+    // Fields:
+    /** The name of the shape, such as "TORUS 5x5 k4". */
+    private final String name;
+    /** How the grid's edges are glued, or null for the star. */
+    private final Topology topology;
+    /** The width and height the board is printed in. */
+    private final int m, n;
+    /** The length of a winning line. */
+    private final int k;
+    /** The cells of every line, k per line. */
+    private final int[] lineCells;
+    /** The lines through each cell c are cellLines[cellStarts[c]] on. */
+    private final int[] cellStarts;
+    /** The lines through each cell, cell after cell. */
+    private final int[] cellLines;
+    /** The place of each cell in each line through it, as in cellLines. */
+    private final int[] cellPlaces;
+    /** Zobrist keys, two per cell: one for 'X', one for 'O'. */
+    private final long[] zobrist;
+    /** Constructor given the shape and its lines. */
+    private LineTable(String name, Topology topology, int m, int n, int k, int[] lineCells) {
+        if (lineCells.length == 0)
+            throw new IllegalArgumentException("No line of "+k+" fits "+name);
+        this.name = name;
+        this.topology = topology;
+        this.m = m;   this.n = n;   this.k = k;
+        this.lineCells = lineCells;
+        this.cellStarts = new int[m*n + 1];
+        for (int cell : lineCells)
+            cellStarts[cell + 1]++; // Count the lines through each cell
+        for (int c = 0; c < m*n; c++)
+            cellStarts[c + 1] += cellStarts[c];
+        this.cellLines = new int[lineCells.length];
+        this.cellPlaces = new int[lineCells.length];
+        int[] filled = cellStarts.clone();
+        for (int i = 0; i < lineCells.length; i++) {
+            cellPlaces[filled[lineCells[i]]] = i % k;
+            cellLines[filled[lineCells[i]]++] = i / k;
+        }
+        Random keys = new Random(ZOBRIST_SEED); // Same keys for every board
+        this.zobrist = new long[2*m*n];
+        for (int i = 0; i < zobrist.length; i++)
+            zobrist[i] = keys.nextLong();
+    }
+    // Accessors:
+    /** @return the name of the shape. */
+    String getName() { return name; }
+    /** @return how the grid's edges are glued, or null for the star. */
+    Topology getTopology() { return topology; }
+    /** @return the width the board is printed in. */
+    int getM() { return m; }
+    /** @return the height the board is printed in. */
+    int getN() { return n; }
+    /** @return the length of a winning line. */
+    int getK() { return k; }
+    /** @return the number of cells. */
+    int size() { return m*n; }
+    /** @return the number of lines. */
+    int getLineTotal() { return lineCells.length / k; }
+    /** @return the cells of every line, k per line. Not to be changed. */
+    int[] getLineCells() { return lineCells; }
+    /** @return where each cell's lines start in getCellLines(). Not to be changed. */
+    int[] getCellStarts() { return cellStarts; }
+    /** @return the lines through each cell, cell after cell. Not to be changed. */
+    int[] getCellLines() { return cellLines; }
+    /** @return the place of each cell in its lines, as in getCellLines(). Not to be changed. */
+    int[] getCellPlaces() { return cellPlaces; }
+    /** @return the Zobrist keys, 'X' then 'O' for each cell. Not to be changed. */
+    long[] getZobrist() { return zobrist; }
+    @Override public String toString() { return name; }
+    // Methods:
+    /** @return the table of an m by n grid with k in a row, edges unglued. */
+    static LineTable grid(int m, int n, int k) {
+        return of(Topology.PLANE, m, n, k);
+    }
+    /** @return the table of an m by n grid with k in a row, edges glued. */
+    static LineTable of(Topology topology, int m, int n, int k) {
+        if (m < 1 || n < 1 || k < 1)
+            throw new IllegalArgumentException("No line of "+k+" fits "+m+"x"+n);
+        return cache.computeIfAbsent(topology+" "+m+"x"+n+" k"+k,
+            name -> new LineTable(name, topology, m, n, k, makeLines(topology, m, n, k)));
+    }
+    /** @return the table of the pentagram with k (at most 4) in a row. */
+    static LineTable star(int k) {
+        if (k < 1 || k > 4)
+            throw new IllegalArgumentException("No line of "+k+" fits the star");
+        return cache.computeIfAbsent("STAR k"+k,
+            name -> new LineTable(name, null, 10, 1, k, makeStarLines(k)));
+    }
+    /**
+     * @return the table of a shape by its name, as getName() gives it.
+     * @throws IllegalArgumentException if it names no shape.
+     */
+    static LineTable named(String name) {
+        String[] words = name.split(" ");
+        try {
+            if (words.length == 2 && words[0].equals("STAR") && words[1].startsWith("k"))
+                return star(Integer.parseInt(words[1].substring(1)));
+            String[] size = words.length == 3 ? words[1].split("x") : new String[0];
+            if (size.length == 2 && words[2].startsWith("k"))
+                return of(Topology.valueOf(words[0]), Integer.parseInt(size[0]),
+                          Integer.parseInt(size[1]), Integer.parseInt(words[2].substring(1)));
+        } catch (IllegalArgumentException exc) {
+            // Not a number or not a topology: no shape, as below
+        }
+        throw new IllegalArgumentException("No shape is named "+name);
+    }
+    /** @return the table of the same shape with lines of another length. */
+    LineTable withK(int k) {
+        return topology == null ? star(k) : of(topology, m, n, k);
+    }
+    /**
+     * @return the cells of every line of k on a glued grid, k by k.
+     * A line is walked out from every cell in every direction; a line
+     * crossing itself is no line, and a line found again (from its other
+     * end, or around a wrap) is kept once.
+     */
+    private static int[] makeLines(Topology topology, int m, int n, int k) {
+        boolean wrapX = topology != Topology.PLANE;
+        boolean wrapY = topology == Topology.TORUS || topology == Topology.KLEIN;
+        boolean flip = topology == Topology.KLEIN;
+        // On the plane, four directions find every line just once
+        int walkable = topology == Topology.PLANE ? 4 : 8;
+        Set<String> seen = new HashSet<>();
+        int[] buffer = new int[8*m*n*k], line = new int[k];
+        int count = 0;
+        for (int start = 0; start < m*n; start++)
+            walks:
+            for (int w = 0; w < walkable; w++) {
+                int x = start % m, y = start / m, dx = directions[w][0], dy = directions[w][1];
+                for (int i = 0; i < k; i++) {
+                    if (i > 0) {
+                        x += dx;
+                        y += dy;
+                        if (y < 0 || y >= n) {
+                            if (!wrapY) continue walks;
+                            y = Math.floorMod(y, n);
+                            if (flip) { // Over the glued edge, mirrored
+                                x = m - 1 - x;
+                                dx = -dx;
+                            }
+                        }
+                        if (x < 0 || x >= m) {
+                            if (!wrapX) continue walks;
+                            x = Math.floorMod(x, m);
+                        }
+                    }
+                    line[i] = y*m + x;
+                }
+                int[] sorted = line.clone();
+                Arrays.sort(sorted);
+                for (int i = 1; i < k; i++)
+                    if (sorted[i] == sorted[i-1]) continue walks; // Crosses itself
+                if (!seen.add(Arrays.toString(sorted))) continue; // Known already
+                System.arraycopy(line, 0, buffer, count, k);
+                count += k;
+            }
+        return Arrays.copyOf(buffer, count);
+    }
+    /**
+     * @return the cells of every run of k along the pentagram's lines.
+     * Line i runs from tip i to tip i+2. It crosses line i-1 and then
+     * line i+1 on the way; cell 5+i is where lines i and i+1 cross.
+     */
+    private static int[] makeStarLines(int k) {
+        int[] buffer = new int[5*4*k];
+        int count = 0;
+        for (int i = 0; i < 5; i++) {
+            int[] cells = { i, 5 + (i+4) % 5, 5 + i, (i+2) % 5 };
+            for (int first = 0; first + k <= 4; first++)
+                for (int j = 0; j < k; j++)
+                    buffer[count++] = cells[first + j];
+        }
+        return Arrays.copyOf(buffer, count);
+    }
+    /**
+     * Search the empty board of every shape of one size, and print its
+     * lines and the search's speed, to show the shapes play alike.
+     * Arguments: [m] [n] [k] [depth].
+     */
+    public static void main(String[] args) {
+        int m = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int n = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int k = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int depth = args.length > 3 ? Integer.parseInt(args[3]) : 7;
+        LineTable[] tables = new LineTable[Topology.values().length + 1];
+        for (Topology topology : Topology.values())
+            tables[topology.ordinal()] = of(topology, m, n, k);
+        tables[tables.length - 1] = star(Math.min(k, 4));
+        System.out.println("shape\t\tlines\tnodes\tnodes/s\tmove\tscore");
+        for (LineTable table : tables) {
+            MNKBoard board = new MNKBoard(table, true, Level.WIZARD);
+            Searcher searcher = new Searcher(20);
+            searcher.search(board, depth, 60000); // Warm up
+            long start = System.nanoTime();
+            int move = searcher.search(board, depth, 60000);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%-15s\t%d\t%d\t%.0f\t%d\t%d%n", table, table.getLineTotal(),
+                searcher.getNodes(), searcher.getNodes() / seconds, move, searcher.getScore());
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * @author Rohan
+ *
+ * A load generator for GameServer: many players at once, each playing
+ * random legal moves, game after game.
+ */
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Main class of the load generator. All players share one thread and
+ * one selector. Every player connects before any plays; each then sends
+ * its first request once the selector finds it writable, so no reply
+ * waits on the other players connecting. The time from writing each
+ * request to reading its reply is recorded, and at the end the games
+ * (sessions) per second and the latency percentiles are printed.
+ */
+class LoadClient {
+    /** The most latencies recorded; later ones are dropped. */
+    private static final int MAX_SAMPLES = 1 << 24;
+    /** Latencies of the requests, in nanoseconds; doubled as it fills. */
+    private long[] latencies = new long[1 << 16];
+    /** The number of latencies recorded. */
+    private int samples;
+    /** Games finished. */
+    private long games;
+    /** Random object choosing the players' moves. */
+    private final Random rand = new Random(2013);
+    /** The state of one player. */
+    private static class Player {
+        final ByteBuffer in = ByteBuffer.allocate(256);
+        ByteBuffer out;
+        /** Spaces taken in the current game. */
+        int occupied;
+        /** When the pending request was written. */
+        long sentAt;
+        /** Games this player still has to play. */
+        long gamesLeft;
+    }
+    /**
+     * Run the load.
+     * Arguments: [host] [port] [players] [games per player] [level].
+     */
+    public static void main(String[] args) throws IOException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 2013;
+        int players = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        long perPlayer = args.length > 3 ? Long.parseLong(args[3]) : 100;
+        String level = args.length > 4 ? args[4] : "MEDIUM";
+        if (players < 1) throw new IllegalArgumentException("Need a player, not "+players);
+        if (perPlayer < 1) throw new IllegalArgumentException("Need a game, not "+perPlayer);
+        new LoadClient().run(host, port, players, perPlayer, level);
+    }
+    /** Connect every player and play until all are done. */
+    private void run(String host, int port, int players, long perPlayer,
+                     String level) throws IOException {
+        byte[] newGame = ("NEW "+level+" Y\n").getBytes(StandardCharsets.US_ASCII);
+        Selector selector = Selector.open();
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        for (int i = 0; i < players; i++) {
+            SocketChannel channel = SocketChannel.open(address);
+            channel.socket().setTcpNoDelay(true);
+            channel.configureBlocking(false);
+            Player player = new Player();
+            player.gamesLeft = perPlayer;
+            channel.register(selector, SelectionKey.OP_WRITE, player); // To send its first game
+        }
+        long start = System.nanoTime();
+        int active = players;
+        while (active > 0) {
+            selector.select();
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                SocketChannel channel = (SocketChannel) key.channel();
+                Player player = (Player) key.attachment();
+                if (key.isWritable()) {
+                    if (player.out == null) send(channel, player, ByteBuffer.wrap(newGame));
+                    else channel.write(player.out);
+                    if (!player.out.hasRemaining())
+                        key.interestOps(SelectionKey.OP_READ);
+                }
+                if (!key.isReadable()) continue;
+                if (channel.read(player.in) < 0)
+                    throw new IOException("The server closed a connection");
+                String reply = takeLine(player.in);
+                if (reply == null) continue; // Not all there yet
+                record(System.nanoTime() - player.sentAt);
+                String request = answer(player, reply);
+                if (request == null && --player.gamesLeft == 0) {
+                    channel.close();
+                    active--;
+                } else {
+                    if (request == null) {
+                        player.occupied = 0;
+                        request = "NEW "+level+" Y";
+                    }
+                    send(channel, player, ByteBuffer.wrap(
+                        (request + "\n").getBytes(StandardCharsets.US_ASCII)));
+                    if (player.out.hasRemaining())
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Arrays.sort(latencies, 0, samples);
+        System.out.printf("%d players, %d games in %.2f s: %.0f sessions/s, "
+            + "%.0f requests/s%n", players, games, seconds, games / seconds,
+            samples / seconds);
+        System.out.printf("latency us: p50 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n",
+            percentile(0.50), percentile(0.99), percentile(0.999),
+            latencies[samples - 1] / 1e3);
+    }
+    /** Send a request, noting when it is written. */
+    private static void send(SocketChannel channel, Player player, ByteBuffer request)
+            throws IOException {
+        player.out = request;
+        player.sentAt = System.nanoTime();
+        channel.write(request);
+    }
+    /** @return the first whole line in a buffer, taking it out, or null. */
+    private static String takeLine(ByteBuffer in) {
+        for (int i = 0; i < in.position(); i++)
+            if (in.get(i) == '\n') {
+                String line = new String(in.array(), 0, i, StandardCharsets.US_ASCII);
+                in.flip();
+                in.position(i + 1);
+                in.compact();
+                return line;
+            }
+        return null;
+    }
+    /**
+     * Follow a reply ("OK m s") on the player's board.
+     * @return the next move request, or null if the game is over.
+     */
+    private String answer(Player player, String reply) throws IOException {
+        String[] words = reply.split(" ");
+        if (!words[0].equals("OK")) throw new IOException("Server said: "+reply);
+        if (!words[1].equals("-"))
+            player.occupied |= 1 << Integer.parseInt(words[1]);
+        if (!words[2].equals("P")) {
+            games++;
+            return null;
+        }
+        int open = ~player.occupied & Board.FULL_MASK;
+        int move = Utility.nthSetBit(open, rand.nextInt(Integer.bitCount(open)));
+        player.occupied |= 1 << move;
+        return "MOVE "+move;
+    }
+    /** Record a latency. */
+    private void record(long nanos) {
+        if (samples == MAX_SAMPLES) return;
+        if (samples == latencies.length)
+            latencies = Arrays.copyOf(latencies, Math.min(MAX_SAMPLES, 2*samples));
+        latencies[samples++] = nanos;
+    }
+    /** @return a latency percentile, in microseconds. */
+    private double percentile(double p) {
+        return latencies[(int) Math.min(samples - 1, (long) (p * samples))] / 1e3;
+    }
+}
@@ -0,0 +1,520 @@
+/**
+ * @author Rohan
+ *
+ * The generalized game: m columns by n rows, and k in a row wins.
+ * Plain tic-tac-toe is the 3,3,3 game.
+ */
+
+import java.util.Random;
+
+/**
+ * A class representing an m,n,k board. It plays like Board, with the
+ * same levels, but spaces are plain cell numbers instead of Pairs.
+ * Cells are numbered row by row from the top left, just like the
+ * numerical (0-8) coordinates of the 3x3 board.
+ *
+ * The lines come from a LineTable, so the same board also plays on a
+ * cylinder, torus or Klein bottle, or on the star, as fast as on the
+ * plain grid.
+ *
+ * Computer is always 'X', user is always 'O'.
+ * Moves are made for whichever side is to move, and can be undone,
+ * which is what the search (see Searcher) relies on.
+ *
+ * Every cell knows the lines through it, and every line keeps count of
+ * its 'X's and 'O's. A move only updates the lines through its cell, so
+ * wins, dead ("cancelled") lines, draws and the evaluation are known at
+ * once, without looking over the whole board. With a TupleNet, each of
+ * its tuples keeps its code the same way, and the network's sum adds
+ * to the evaluation.
+ *
+ * A board searching with more than one thread (see setThreads) holds a
+ * pool of them until it is closed.
+ */
+class MNKBoard implements AutoCloseable {
+    // Static fields:
+    /** Cell contents. */
+    static final byte EMPTY = 0, X = 1, O = 2;
+    /** Key hashed in when the computer is to move. */
+    private static final long COMP_TO_MOVE = 0x9E3779B97F4A7C15L;
+    // Fields:
+    /** The lines of the board's shape. */
+    private final LineTable table;
+    /** Width, height and the length of a winning line. */
+    private final int m, n, k;
+    /** The cells of every line of k which is a win, k per line. */
+    private final int[] lineCells;
+    /** The number of lines. */
+    private final int lineTotal;
+    /** The lines through each cell c are cellLines[cellStarts[c]] on. */
+    private final int[] cellStarts;
+    /** The lines through each cell, cell after cell. */
+    private final int[] cellLines;
+    /** The number of 'X's and of 'O's in each line. */
+    private final byte[] xCounts, oCounts;
+    /** The number of lines holding both an 'X' and an 'O'. */
+    private int deadLines;
+    /** The number of lines filled by one side. */
+    private int wonLines;
+    /** The side which filled a line, or EMPTY. */
+    private byte winStone = EMPTY;
+    /** The evaluation of the position for 'X' (see evaluate). */
+    private int score;
+    /** With a network, its sums for 'X' and for 'O' (see TupleNet). */
+    private int xNetScore, oNetScore;
+    /** The network evaluating the position, or null for the line counts. */
+    private TupleNet net;
+    /** The network's int weights, or null. */
+    private int[] netValues;
+    /** Where the table of each of the network's tuples starts in its weights. */
+    private int[] tupleOffsets;
+    /** The network's tuples through each cell c are cellTuples[tupleStarts[c]] on. */
+    private int[] tupleStarts;
+    /** The network's tuples through each cell, cell after cell. */
+    private int[] cellTuples;
+    /** The place of each cell in each tuple through it, as in cellTuples. */
+    private int[] tuplePlaces;
+    /** The code of each of the network's tuples as 'X' sees it, and as 'O' does (see TupleNet). */
+    private int[] xCodes, oCodes;
+    /** Zobrist keys, two per cell: one for 'X', one for 'O'. */
+    private final long[] zobrist;
+    /** The board itself. */
+    private final byte[] cells;
+    /** The cells played, in order. */
+    private final int[] moveSeq;
+    /** The number of moves played. */
+    private int plies;
+    /** The Zobrist hash of the position, including the side to move. */
+    private long hash;
+    /** Tells whether it is the computer's turn. */
+    private boolean isCompTurn;
+    /** Tells whether the computer started. */
+    private final boolean isCompStarted;
+    /** A level object, which tells which level is being played. */
+    private final Level level;
+    /** Random object used to determine a random choice of move. */
+    private final Random rand = new Random();
+    /**
+     * The search used by the harder levels: made when first needed, or by
+     * prepare() before the first move, or given by setSearcher().
+     */
+    private Searcher searcher;
+    /** The threads the wizard level searches with. */
+    private int threads = 1;
+    /** The search used by the wizard level with more than one thread. */
+    private ParallelSearch parallel;
+    /** The time the harder levels may think, in milliseconds. */
+    private long moveMillis = 1000;
+    /** The nodes the hard level may search. */
+    private long moveNodes = Long.MAX_VALUE;
+    /** The plies the hard level looks ahead. */
+    private int hardDepth = Board.HARD_DEPTH;
+    /** The chance the hard level plays a random move instead. */
+    private double hardNoise = Board.HARD_NOISE;
+    /** Constructor given the size, k, level and starter. */
+    MNKBoard(int m, int n, int k, boolean isCompStarted, Level level) {
+        this(LineTable.grid(m, n, k), isCompStarted, level);
+    }
+    /** Constructor given the lines of the board's shape, level and starter. */
+    MNKBoard(LineTable table, boolean isCompStarted, Level level) {
+        this.table = table;
+        this.m = table.getM();   this.n = table.getN();   this.k = table.getK();
+        this.isCompStarted = isCompStarted;
+        this.isCompTurn = isCompStarted;
+        this.level = level;
+        this.cells = new byte[m*n];
+        this.moveSeq = new int[m*n];
+        this.lineCells = table.getLineCells();
+        this.lineTotal = table.getLineTotal();
+        this.cellStarts = table.getCellStarts();
+        this.cellLines = table.getCellLines();
+        this.xCounts = new byte[lineTotal];
+        this.oCounts = new byte[lineTotal];
+        this.zobrist = table.getZobrist(); // Same keys for every board
+        if (isCompTurn) hash = COMP_TO_MOVE;
+        TupleNet installed = TupleNet.installed();
+        if (installed != null && installed.fits(table)) setNet(installed);
+    }
+    /** Copy constructor. The copy shares the immutable tables. */
+    MNKBoard(MNKBoard other) {
+        this.table = other.table;
+        this.m = other.m;   this.n = other.n;   this.k = other.k;
+        this.lineCells = other.lineCells;
+        this.lineTotal = other.lineTotal;
+        this.cellStarts = other.cellStarts;
+        this.cellLines = other.cellLines;
+        this.net = other.net;
+        this.netValues = other.netValues;
+        this.tupleOffsets = other.tupleOffsets;
+        this.tupleStarts = other.tupleStarts;
+        this.cellTuples = other.cellTuples;
+        this.tuplePlaces = other.tuplePlaces;
+        this.xCodes = other.xCodes == null ? null : other.xCodes.clone();
+        this.oCodes = other.oCodes == null ? null : other.oCodes.clone();
+        this.xCounts = other.xCounts.clone();
+        this.oCounts = other.oCounts.clone();
+        this.deadLines = other.deadLines;
+        this.wonLines = other.wonLines;
+        this.winStone = other.winStone;
+        this.score = other.score;
+        this.xNetScore = other.xNetScore;
+        this.oNetScore = other.oNetScore;
+        this.zobrist = other.zobrist;
+        this.cells = other.cells.clone();
+        this.moveSeq = other.moveSeq.clone();
+        this.plies = other.plies;
+        this.hash = other.hash;
+        this.isCompTurn = other.isCompTurn;
+        this.isCompStarted = other.isCompStarted;
+        this.level = other.level;
+        this.moveMillis = other.moveMillis;
+        this.moveNodes = other.moveNodes;
+        this.hardDepth = other.hardDepth;
+        this.hardNoise = other.hardNoise;
+        this.threads = other.threads;
+    }
+    /**
+     * @return the worth of a line for 'X': a line still open to one side
+     * is worth four times more for every stone of it.
+     */
+    private static int worth(int xs, int os) {
+        if (os == 0) return xs == 0 ? 0 : 1 << 2*Math.min(xs, 8);
+        return xs == 0 ? -(1 << 2*Math.min(os, 8)) : 0;
+    }
+    // Accessors:
+    /** @return width of board. */
+    int getM() { return m; }
+    /** @return height of board. */
+    int getN() { return n; }
+    /** @return the length of a winning line. */
+    int getK() { return k; }
+    /** @return the lines of the board's shape. */
+    LineTable getTable() { return table; }
+    /** @return the number of cells. */
+    int size() { return cells.length; }
+    /** @return level of board. */
+    Level getLevel() { return level; }
+    /** @return if the computer started. */
+    boolean getIsCompStarted() { return isCompStarted; }
+    /** @return if it is the computer's turn. */
+    boolean getIsCompTurn() { return isCompTurn; }
+    /** @return the number of moves played. */
+    int getPlies() { return plies; }
+    /** @return the Zobrist hash of the position. */
+    long getHash() { return hash; }
+    /** @return the number of winning lines through a cell. */
+    int getLineCount(int cell) { return cellStarts[cell + 1] - cellStarts[cell]; }
+    /** @return the cell played last, or -1 at the start. */
+    int lastMove() { return plies == 0 ? -1 : moveSeq[plies-1]; }
+    /** @return if a cell is open. */
+    boolean isOpen(int cell) { return cells[cell] == EMPTY; }
+    /** @return if every cell has been played. */
+    boolean isFull() { return plies == cells.length; }
+    /** Set the time the harder levels may think for, in milliseconds. */
+    void setMoveMillis(long moveMillis) { this.moveMillis = moveMillis; }
+    /**
+     * Set the most a hard move may take: a time in milliseconds and a
+     * number of nodes. Past either, the best move found so far is played.
+     */
+    void setMoveBudget(long moveMillis, long moveNodes) {
+        this.moveMillis = moveMillis;
+        this.moveNodes = moveNodes;
+    }
+    /** Set the plies the hard level looks ahead: its strength. */
+    void setHardDepth(int hardDepth) { this.hardDepth = hardDepth; }
+    /** Set the chance the hard level plays a random move instead. */
+    void setHardNoise(double hardNoise) { this.hardNoise = hardNoise; }
+    /**
+     * Set the network evaluating positions for the search, or null to
+     * go back to the line counts. The network must fit the board's shape.
+     */
+    void setNet(TupleNet net) {
+        if (net != null && !net.fits(table))
+            throw new IllegalArgumentException("Not a network for "+table);
+        this.net = net;
+        xNetScore = oNetScore = 0;
+        if (net == null) {
+            netValues = xCodes = oCodes = null;
+            return;
+        }
+        LineTable tuples = net.getTuples();
+        this.netValues = net.getValues();
+        this.tupleOffsets = net.getTupleOffsets();
+        this.tupleStarts = tuples.getCellStarts();
+        this.cellTuples = tuples.getCellLines();
+        this.tuplePlaces = net.getTuplePlaces();
+        this.xCodes = new int[tuples.getLineTotal()];
+        this.oCodes = new int[tuples.getLineTotal()];
+        for (int tuple = 0; tuple < xCodes.length; tuple++)
+            xNetScore = oNetScore += netValues[tupleOffsets[tuple]]; // All open
+        for (int cell = 0; cell < cells.length; cell++)
+            if (cells[cell] != EMPTY) recode(cell, cells[cell]);
+    }
+    /**
+     * Set the search the harder levels use, so that boards played one
+     * after another can share one, and its table, instead of each making
+     * its own. A search should serve one game at a time.
+     */
+    void setSearcher(Searcher searcher) {
+        searcher.fit(this);
+        this.searcher = searcher;
+    }
+    /**
+     * Set the threads the wizard level searches with; 1 is reproducible.
+     * With more, their search and shared table are made now, not in a move.
+     */
+    void setThreads(int threads) {
+        if (parallel != null) parallel.shutdown();
+        parallel = null;
+        this.threads = threads;
+        if (threads > 1) {
+            parallel = new ParallelSearch(threads, 22);
+            parallel.fit(this);
+        }
+    }
+    // Methods:
+    /** Get an 'X', 'O' or ' ' for a cell. */
+    char refer(int cell) {
+        return cells[cell] == X ? 'X' : cells[cell] == O ? 'O' : ' ';
+    }
+    /** Printable version of board. */
+    @Override public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int y = 0; y < n; y++) {
+            sb.append("\n\t\t");
+            for (int x = 0; x < m; x++)
+                sb.append(x == 0 ? " " : " | ").append(refer(y*m + x));
+        }
+        return sb.toString();
+    }
+    /** Play a cell for the side to move. */
+    void makeMove(int cell) {
+        byte stone = isCompTurn ? X : O;
+        cells[cell] = stone;
+        hash ^= zobrist[2*cell + stone-1] ^ COMP_TO_MOVE;
+        moveSeq[plies++] = cell;
+        isCompTurn = !isCompTurn;
+        for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+            int line = cellLines[i];
+            int xs = xCounts[line], os = oCounts[line];
+            score -= worth(xs, os);
+            if (stone == X) {
+                xCounts[line] = (byte) ++xs;
+                if (xs == 1 && os > 0) deadLines++;
+                if (xs == k) { wonLines++; winStone = X; }
+            } else {
+                oCounts[line] = (byte) ++os;
+                if (os == 1 && xs > 0) deadLines++;
+                if (os == k) { wonLines++; winStone = O; }
+            }
+            score += worth(xs, os);
+        }
+        if (netValues != null) recode(cell, stone);
+    }
+    /**
+     * Bring the network's tuples through a cell, and its evaluations, up
+     * to date, after a stone was put on the cell or taken off.
+     */
+    private void recode(int cell, byte stone) {
+        int sign = cells[cell] == EMPTY ? -1 : 1;
+        for (int i = tupleStarts[cell]; i < tupleStarts[cell + 1]; i++) {
+            int tuple = cellTuples[i], at = tupleOffsets[tuple];
+            int digit = sign*TupleNet.POWERS[tuplePlaces[i]];
+            int xCode = xCodes[tuple] + stone*digit, oCode = oCodes[tuple] + (3 - stone)*digit;
+            xNetScore += netValues[at + xCode] - netValues[at + xCodes[tuple]];
+            oNetScore += netValues[at + oCode] - netValues[at + oCodes[tuple]];
+            xCodes[tuple] = xCode;
+            oCodes[tuple] = oCode;
+        }
+    }
+    /** Take back the last move. */
+    void undoMove() {
+        int cell = moveSeq[--plies];
+        byte stone = cells[cell];
+        hash ^= zobrist[2*cell + stone-1] ^ COMP_TO_MOVE;
+        cells[cell] = EMPTY;
+        isCompTurn = !isCompTurn;
+        for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+            int line = cellLines[i];
+            int xs = xCounts[line], os = oCounts[line];
+            score -= worth(xs, os);
+            if (stone == X) {
+                if (xs == k && --wonLines == 0) winStone = EMPTY;
+                xCounts[line] = (byte) --xs;
+                if (xs == 0 && os > 0) deadLines--;
+            } else {
+                if (os == k && --wonLines == 0) winStone = EMPTY;
+                oCounts[line] = (byte) --os;
+                if (os == 0 && xs > 0) deadLines--;
+            }
+            score += worth(xs, os);
+        }
+        if (netValues != null) recode(cell, stone);
+    }
+    /**
+     * Is the stone on a cell part of k in a row?
+     * Only the lines through the cell are looked at, so checking
+     * the last move is enough to see if it won.
+     */
+    boolean isWinningMove(int cell) {
+        byte stone = cells[cell];
+        if (stone == EMPTY) return false;
+        byte[] counts = stone == X ? xCounts : oCounts;
+        for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++)
+            if (counts[cellLines[i]] == k) return true;
+        return false;
+    }
+    /** Is it already a draw? Every line holds both an 'X' and an 'O'. */
+    boolean isFastDraw() { return deadLines == lineTotal; }
+    /**
+     * @return whatever character of the winner.
+     * @return 'X' means the comp won.
+     * @return 'O' means the user won.
+     * @return 'D' means the game is a draw.
+     * @return 'P' means the game is still in progress.
+     */
+    char winner() {
+        if (winStone != EMPTY) return winStone == X ? 'X' : 'O';
+        if (isFull() || isFastDraw()) return 'D';
+        return 'P';
+    }
+    /**
+     * Static evaluation for the side to move: each line still open to
+     * one side is worth four times more for every stone in it. With a
+     * network, the network's sum is added to the line counts, scaled to
+     * its weights.
+     * It is kept up to date by every move.
+     */
+    int evaluate() {
+        int lines = isCompTurn ? score : -score;
+        if (netValues == null) return lines;
+        return (int) ((long) lines * TupleNet.SCALE / TupleNet.LINES)
+             + (isCompTurn ? xNetScore : oNetScore);
+    }
+    /** @return a cell which wins at once for a stone, or -1. */
+    int winningCell(byte stone) {
+        byte[] own = stone == X ? xCounts : oCounts;
+        byte[] other = stone == X ? oCounts : xCounts;
+        for (int line = 0; line < lineTotal; line++)
+            if (own[line] == k - 1 && other[line] == 0) // One short, open
+                for (int i = line*k; i < line*k + k; i++)
+                    if (cells[lineCells[i]] == EMPTY) return lineCells[i];
+        return -1;
+    }
+    /**
+     * Make the harder levels' search and its table now, so that the first
+     * move doesn't pay for them. A board that will play against a clock
+     * should be prepared; one that never searches needn't be.
+     */
+    void prepare() {
+        if (threads == 1) searcher();
+        else if (parallel == null) setThreads(threads);
+    }
+    /**
+     * Make this board's position another's, into this board's own arrays,
+     * so a search can follow a game without copying a board every move.
+     * @return false, changing nothing, unless both boards have the same
+     * shape, network and starter.
+     */
+    boolean copyPosition(MNKBoard other) {
+        if (other.table != table || other.net != net || other.isCompStarted != isCompStarted)
+            return false;
+        System.arraycopy(other.xCounts, 0, xCounts, 0, xCounts.length);
+        System.arraycopy(other.oCounts, 0, oCounts, 0, oCounts.length);
+        if (xCodes != null) {
+            System.arraycopy(other.xCodes, 0, xCodes, 0, xCodes.length);
+            System.arraycopy(other.oCodes, 0, oCodes, 0, oCodes.length);
+        }
+        System.arraycopy(other.cells, 0, cells, 0, cells.length);
+        System.arraycopy(other.moveSeq, 0, moveSeq, 0, other.plies);
+        deadLines = other.deadLines;
+        wonLines = other.wonLines;
+        winStone = other.winStone;
+        score = other.score;
+        xNetScore = other.xNetScore;
+        oNetScore = other.oNetScore;
+        plies = other.plies;
+        hash = other.hash;
+        isCompTurn = other.isCompTurn;
+        return true;
+    }
+    /** Stop the threads of the wizard level's search, if it has any. */
+    @Override public void close() {
+        if (parallel != null) parallel.shutdown();
+        parallel = null;
+    }
+    /** @return the search of this board, made and fit to it when first needed. */
+    private Searcher searcher() {
+        if (searcher == null) {
+            searcher = new Searcher(20);
+            searcher.fit(this);
+        }
+        return searcher;
+    }
+    /**
+     * @return the move of a level, for the side to move.
+     * The harder levels' time budget runs from the call.
+     * With MoveProfiler enabled, the move's allocation is accounted;
+     * with EngineMetrics enabled, its time is recorded.
+     */
+    int move(Level level) {
+        long start = System.nanoTime();
+        if (!MoveProfiler.ENABLED && !EngineMetrics.ENABLED) return choose(level, start);
+        long before = MoveProfiler.ENABLED ? MoveProfiler.start() : 0;
+        int move = choose(level, start);
+        if (EngineMetrics.ENABLED) EngineMetrics.recordMove(level, System.nanoTime() - start);
+        if (MoveProfiler.ENABLED) MoveProfiler.end(level, before);
+        return move;
+    }
+    /** @return the move of a level, for the side to move, asked for at a time. */
+    private int choose(Level level, long start) {
+        switch (level) {
+            case EASY:   return levelEasy();
+            case MEDIUM: return levelMedium();
+            case HARD:   return levelHard(start);
+            default:     return levelWizard(start);
+        }
+    }
+    /** The easy level's move. Easy chooses a random open cell. */
+    int levelEasy() {
+        int n = rand.nextInt(cells.length - plies);
+        for (int cell = 0; ; cell++)
+            if (cells[cell] == EMPTY && n-- == 0) return cell;
+    }
+    /**
+     * The medium level's move.
+     * Medium plays like a normal human. Win or block, or play randomly.
+     */
+    int levelMedium() {
+        byte own = isCompTurn ? X : O;
+        int cell = winningCell(own);
+        if (cell < 0) cell = winningCell(own == X ? O : X);
+        return cell < 0 ? levelEasy() : cell;
+    }
+    /**
+     * The hard level's move: a shallow search, hardDepth plies, within
+     * the move budget; or now and then, by hardNoise, a random move.
+     */
+    int levelHard() { return levelHard(System.nanoTime()); }
+    /** The hard level's move, its budget running from a time in System.nanoTime(). */
+    private int levelHard(long start) {
+        if (hardNoise > 0 && rand.nextDouble() < hardNoise) return levelEasy();
+        return searcher().searchUntil(this, hardDepth, start + moveMillis*1000000, moveNodes);
+    }
+    /**
+     * The wizard level's move: the opening book's, if it holds the
+     * position, or else search as deep as time allows.
+     */
+    int levelWizard() { return levelWizard(System.nanoTime()); }
+    /** The wizard level's move, its time running from a time in System.nanoTime(). */
+    private int levelWizard(long start) {
+        OpeningBook book = OpeningBook.installed();
+        int move = book == null ? -1 : book.bestMove(this);
+        if (move >= 0) return move;
+        if (threads == 1)
+            return searcher().searchUntil(this, cells.length - plies,
+                                          start + moveMillis*1000000, Long.MAX_VALUE);
+        if (parallel == null) setThreads(threads); // A copy makes its own, till closed
+        return parallel.searchUntil(this, cells.length - plies, start + moveMillis*1000000);
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * @author Rohan
+ *
+ * Accounting of what choosing a move costs, per level.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MoveProfiler is an all-static uninstantiable class.
+ * When the program runs with -Dttt.profileMoves=true, every move chosen
+ * through a board's move(Level) is counted, with the bytes its thread
+ * allocated meanwhile. Otherwise ENABLED is a false constant and the
+ * boards skip the accounting altogether.
+ */
+class MoveProfiler {
+    /** Private constructor prevents instantiablity. */
+    private MoveProfiler() {}
+    // Static fields:
+    /** Tells whether moves are accounted. */
+    static final boolean ENABLED = Boolean.getBoolean("ttt.profileMoves");
+    /** The source of per-thread allocation counts. */
+    private static final com.sun.management.ThreadMXBean threads =
+        ENABLED ? (com.sun.management.ThreadMXBean)
+                  ManagementFactory.getThreadMXBean() : null;
+    /** Moves chosen, per level. */
+    private static final LongAdder[] calls = adders();
+    /** Bytes allocated choosing them, per level. */
+    private static final LongAdder[] bytes = adders();
+    /** Bytes the accounting itself seems to allocate, taken off each move. */
+    private static final long overhead = ENABLED ? measureOverhead() : 0;
+    // Methods:
+    /** @return one LongAdder per level. */
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[Level.values().length];
+        for (int i = 0; i < adders.length; i++) adders[i] = new LongAdder();
+        return adders;
+    }
+    /** @return the least allocation seen between two readings. */
+    private static long measureOverhead() {
+        long least = Long.MAX_VALUE;
+        for (int i = 0; i < 1000; i++)
+            least = Math.min(least, -threads.getCurrentThreadAllocatedBytes()
+                                  + threads.getCurrentThreadAllocatedBytes());
+        return least;
+    }
+    /** @return the reading to pass to end(), taken before a move. */
+    static long start() { return threads.getCurrentThreadAllocatedBytes(); }
+    /** Account a move of a level, given the reading taken before it. */
+    static void end(Level level, long before) {
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        calls[level.ordinal()].increment();
+        bytes[level.ordinal()].add(Math.max(0, allocated - overhead));
+    }
+    /** Forget every move accounted so far. */
+    static void clear() {
+        for (int i = 0; i < calls.length; i++) {
+            calls[i].reset();
+            bytes[i].reset();
+        }
+    }
+    /** @return a table of the moves and bytes per move of each level. */
+    static String report() {
+        StringBuilder sb = new StringBuilder("level\tmoves\tbytes\tbytes/move");
+        for (Level level : Level.values()) {
+            long n = calls[level.ordinal()].sum();
+            long b = bytes[level.ordinal()].sum();
+            sb.append(String.format("%n%s\t%d\t%d\t%.2f", level, n, b,
+                                    n == 0 ? 0.0 : b / (double) n));
+        }
+        return sb.toString();
+    }
+}
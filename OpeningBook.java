@@ -0,0 +1,159 @@
+/**
+ * @author Rohan
+ *
+ * An opening book for the m,n,k game: the positions near the start whose
+ * values ProofSearch has proven, each with a best move.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * A class holding the proven positions of one board shape.
+ *
+ * A position is keyed from the side to move's view (see keyOf): the same
+ * stones give the same key whichever side the computer plays, so one book
+ * serves both. The wizard level plays the book's move whenever it has one,
+ * before it searches at all.
+ *
+ * The file is the magic number, the shape's name, the number of positions
+ * and then each position, in order of key: its key, and an int holding its
+ * value for the side to move plus one (2 a win, 1 a draw, 0 a loss) above
+ * 16 bits of best move.
+ */
+class OpeningBook {
+    // Static fields:
+    /** The first int of every book file: "TOB1". */
+    private static final int MAGIC = 0x544F4231;
+    /** What value() gives for a position not in the book. */
+    static final int UNKNOWN = -2;
+    /** The book file MNKBoard plays from. */
+    private static final String PATH = System.getProperty("ttt.openingBook", "opening.book");
+    /** The book at PATH, once looked for. */
+    private static OpeningBook installed;
+    /** Tells whether PATH has been looked for. */
+    private static boolean looked;
+    // Fields:
+    /** The shape of board. */
+    private final LineTable table;
+    /** The key of each position, in order. */
+    private final long[] keys;
+    /** The value and best move of each position, as in the file. */
+    private final int[] infos;
+    /** Constructor given the shape and its positions, in order of key. */
+    OpeningBook(LineTable table, long[] keys, int[] infos) {
+        this.table = table;
+        this.keys = keys;
+        this.infos = infos;
+    }
+    // Accessors:
+    /** @return the number of positions. */
+    int size() { return keys.length; }
+    /** @return the shape of board. */
+    LineTable getTable() { return table; }
+    /** @return if the book is for a board's shape. */
+    boolean fits(LineTable table) { return this.table == table; }
+    // Methods:
+    /** @return the int holding a value and a best move. */
+    static int info(int value, int move) { return (value + 1) << 16 | move; }
+    /**
+     * @return the key of a board's position: the Zobrist keys of its cells,
+     * the side to move's stones taking the keys of 'X' and the other's
+     * those of 'O'.
+     */
+    static long keyOf(MNKBoard board) {
+        long[] zobrist = board.getTable().getZobrist();
+        char mover = board.getIsCompTurn() ? 'X' : 'O';
+        long key = 0;
+        for (int cell = 0; cell < board.size(); cell++)
+            if (!board.isOpen(cell))
+                key ^= zobrist[2*cell + (board.refer(cell) == mover ? 0 : 1)];
+        return key;
+    }
+    /** @return the info of a board's position, or -1 if it is not held. */
+    private int probe(MNKBoard board) {
+        if (!fits(board.getTable())) return -1;
+        int i = Arrays.binarySearch(keys, keyOf(board));
+        return i < 0 ? -1 : infos[i];
+    }
+    /**
+     * @return the value of a position for the side to move: 1 for a win,
+     * 0 for a draw, -1 for a loss, or UNKNOWN if it is not held.
+     */
+    int value(MNKBoard board) {
+        int info = probe(board);
+        return info < 0 ? UNKNOWN : (info >> 16) - 1;
+    }
+    /** @return a best cell for the side to move, or -1 if not held. */
+    int bestMove(MNKBoard board) {
+        int info = probe(board);
+        return info < 0 ? -1 : info & 0xFFFF;
+    }
+    /** Write the book to a file. */
+    void save(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeUTF(table.getName());
+            out.writeInt(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                out.writeLong(keys[i]);
+                out.writeInt(infos[i]);
+            }
+        }
+    }
+    /** @return the book of a file. */
+    static OpeningBook load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not an opening book: "+file);
+            LineTable table;
+            try {
+                table = LineTable.named(in.readUTF());
+            } catch (IllegalArgumentException exc) {
+                throw new IOException("Corrupt opening book: "+file+": "+exc.getMessage());
+            }
+            int size = in.readInt();
+            if (size < 0) throw new IOException("Corrupt opening book: "+file);
+            long[] keys = new long[size];
+            int[] infos = new int[size];
+            try {
+                for (int i = 0; i < size; i++) {
+                    keys[i] = in.readLong();
+                    infos[i] = in.readInt();
+                    if (i > 0 && keys[i] <= keys[i-1])
+                        throw new IOException("Corrupt opening book: "+file);
+                }
+            } catch (EOFException exc) {
+                throw new IOException("Truncated opening book: "+file);
+            }
+            return new OpeningBook(table, keys, infos);
+        }
+    }
+    /**
+     * @return the book at the path of the property ttt.openingBook
+     * (opening.book by default), or null if there is none.
+     */
+    static synchronized OpeningBook installed() {
+        if (!looked) {
+            looked = true;
+            Path file = Paths.get(PATH);
+            if (Files.exists(file)) {
+                try {
+                    installed = load(file);
+                } catch (IOException exc) {
+                    System.err.println("Opening book "+file+": "+exc.getMessage());
+                }
+            }
+        }
+        return installed;
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * @author Rohan
+ *
+ * Multi-core search for the m,n,k game, by Lazy SMP.
+ */
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A class which searches an MNKBoard with several threads at once.
+ *
+ * Every thread runs the ordinary iterative deepening search on its own
+ * copy of the board, but all of them share one transposition table.
+ * Helpers order their moves a little differently and half of them look
+ * one ply deeper, so what they store in the table guides the main thread
+ * past work it would otherwise do itself. The main thread's move is the
+ * one played; the helpers stop as soon as it is done.
+ *
+ * With one thread this is exactly a single Searcher, which keeps results
+ * reproducible for tests.
+ */
+class ParallelSearch {
+    // Fields:
+    /** The table every thread shares. */
+    private final TransTable table;
+    /** One searcher per thread; the first is the main thread's. */
+    private final Searcher[] searchers;
+    /** The threads of the helpers, or null with one thread. */
+    private final ExecutorService pool;
+    /** Each helper's board, following the searched board's position. */
+    private final MNKBoard[] copies;
+    /** Constructor given the number of threads and table size (log2). */
+    ParallelSearch(int threads, int tableBits) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Need a thread, not "+threads);
+        table = new TransTable(tableBits);
+        searchers = new Searcher[threads];
+        for (int i = 0; i < threads; i++)
+            searchers[i] = new Searcher(table, i);
+        copies = new MNKBoard[threads]; // The main thread searches the board itself
+        pool = threads == 1 ? null : Executors.newFixedThreadPool(threads - 1,
+            task -> {
+                Thread thread = new Thread(task, "search-helper");
+                thread.setDaemon(true); // Never keep the program running
+                return thread;
+            });
+    }
+    // Accessors:
+    /** @return the number of threads. */
+    int getThreads() { return searchers.length; }
+    /** @return the nodes searched by one thread in the last search. */
+    long getNodes(int thread) { return searchers[thread].getNodes(); }
+    /** @return the nodes searched by every thread in the last search. */
+    long getNodes() {
+        long nodes = 0;
+        for (Searcher searcher : searchers) nodes += searcher.getNodes();
+        return nodes;
+    }
+    /** @return the score of the last search's move for its mover. */
+    int getScore() { return searchers[0].getScore(); }
+    /** @return the deepest iteration the main thread finished. */
+    int getDepth() { return searchers[0].getDepth(); }
+    // Methods:
+    /** Size every thread's buffers, and make the helpers' boards, before a board's first move. */
+    void fit(MNKBoard board) {
+        for (Searcher searcher : searchers) searcher.fit(board);
+        for (int i = 1; i < copies.length; i++)
+            if (copies[i] == null || !copies[i].copyPosition(board)) copies[i] = new MNKBoard(board);
+    }
+    /**
+     * Search a board with every thread, as Searcher.search does.
+     * The board is left as it was.
+     * @return the best move found by the main thread.
+     */
+    int search(MNKBoard board, int maxDepth, long millis) {
+        return searchUntil(board, maxDepth, System.nanoTime() + millis*1000000);
+    }
+    /**
+     * Search a board with every thread until a deadline in System.nanoTime().
+     * @return the best move found by the main thread.
+     */
+    int searchUntil(MNKBoard board, int maxDepth, long deadline) {
+        table.newSearch();
+        for (Searcher searcher : searchers) searcher.setStopped(false);
+        Future<?>[] helpers = new Future<?>[searchers.length - 1];
+        for (int i = 1; i < searchers.length; i++) {
+            Searcher helper = searchers[i];
+            if (copies[i] == null || !copies[i].copyPosition(board))
+                copies[i] = new MNKBoard(board); // Not fit, or another game
+            MNKBoard copy = copies[i];
+            int depth = maxDepth + (i % 2); // Half the helpers go deeper
+            helpers[i-1] = pool.submit(() -> helper.searchUntil(copy, depth, deadline, Long.MAX_VALUE));
+        }
+        int move = searchers[0].searchUntil(board, maxDepth, deadline, Long.MAX_VALUE);
+        for (int i = 1; i < searchers.length; i++)
+            searchers[i].setStopped(true);
+        for (Future<?> helper : helpers)
+            try {
+                helper.get();
+            } catch (Exception exc) { // A helper failing only costs speed
+                System.err.println("Search helper failed: "+exc);
+            }
+        return move;
+    }
+    /** Stop the helper threads for good. */
+    void shutdown() {
+        if (pool != null) pool.shutdownNow();
+    }
+    /**
+     * Report how the search scales: search the empty board to a fixed
+     * depth with 1, 2, 4... threads, and print the time, nodes and speedup.
+     * Arguments: m n k depth [maximum threads].
+     */
+    public static void main(String[] args) {
+        int m = Integer.parseInt(args[0]), n = Integer.parseInt(args[1]);
+        int k = Integer.parseInt(args[2]), depth = Integer.parseInt(args[3]);
+        int most = args.length > 4 ? Integer.parseInt(args[4])
+                 : Runtime.getRuntime().availableProcessors();
+        System.out.println("threads\tms\tnodes\tnodes/s\tspeedup\tnodes per thread");
+        double base = 0;
+        for (int threads = 1; threads <= most; threads *= 2) {
+            ParallelSearch search = new ParallelSearch(threads, 22);
+            MNKBoard board = new MNKBoard(m, n, k, true, Level.WIZARD);
+            search.fit(board);
+            search.search(board, Math.min(depth, 4), Long.MAX_VALUE/2000000);
+            search.shutdown();
+            search = new ParallelSearch(threads, 22); // Warm, but fresh table
+            search.fit(board);
+            long start = System.nanoTime();
+            search.search(board, depth, Long.MAX_VALUE/2000000);
+            double ms = (System.nanoTime() - start) / 1e6;
+            if (threads == 1) base = ms;
+            StringBuilder perThread = new StringBuilder();
+            for (int i = 0; i < threads; i++)
+                perThread.append(i == 0 ? "" : " ").append(search.getNodes(i));
+            System.out.printf("%d\t%.1f\t%d\t%.0f\t%.2f\t%s%n", threads, ms,
+                search.getNodes(), search.getNodes()*1000/ms, base/ms,
+                perThread);
+            search.shutdown();
+        }
+    }
+}
@@ -0,0 +1,488 @@
+/**
+ * @author Rohan
+ *
+ * A solver for the m,n,k game: depth-first proof-number search (df-pn),
+ * which proves the value of a position with perfect play, and builds an
+ * opening book of proven positions.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A fixed-size table of proof and disproof numbers keyed by Zobrist
+ * hashes, with the work (nodes searched) below each position.
+ * Entries live in buckets of four slots. A new entry takes an empty slot,
+ * or else the one with the least work, so memory stays bounded and the
+ * positions which took longest to search stay longest.
+ *
+ * When the table is three quarters full, collect() clears the entries of
+ * the smallest subtrees, solved or not, until it is half full: they are
+ * the cheapest to search again.
+ */
+class ProofTable {
+    // Static fields:
+    /** The slots of a bucket. */
+    private static final int BUCKET = 4;
+    // Fields:
+    /** The hash of the position in each slot. */
+    private final long[] keys;
+    /** The phi and delta of each slot (see ProofSearch). */
+    private final int[] phis, deltas;
+    /** The nodes searched below each slot's position; 0 for an empty slot. */
+    private final int[] works;
+    /** Mask taking a hash to a bucket. */
+    private final int mask;
+    /** The number of slots used. */
+    private int used;
+    /** Constructor given the log2 of the number of slots. */
+    ProofTable(int bits) {
+        keys = new long[1 << bits];
+        phis = new int[1 << bits];
+        deltas = new int[1 << bits];
+        works = new int[1 << bits];
+        mask = (1 << bits) - BUCKET; // First slot of each bucket
+    }
+    // Accessors:
+    /** @return the number of slots. */
+    int size() { return keys.length; }
+    /** @return the number of slots used. */
+    int getUsed() { return used; }
+    /** @return if the table should be collected. */
+    boolean isFull() { return used > keys.length / 4 * 3; }
+    /** @return the phi of a slot. */
+    int phi(int slot) { return phis[slot]; }
+    /** @return the delta of a slot. */
+    int delta(int slot) { return deltas[slot]; }
+    /** @return the work of a slot. */
+    int work(int slot) { return works[slot]; }
+    // Methods:
+    /** @return the slot of a position, or -1 if it isn't stored. */
+    int find(long key) {
+        int base = (int) key & mask;
+        for (int i = base; i < base + BUCKET; i++)
+            if (works[i] != 0 && keys[i] == key) return i;
+        return -1;
+    }
+    /** Store the numbers of a position and the work below it. */
+    void store(long key, int phi, int delta, long work) {
+        int slot = find(key);
+        if (slot < 0) {
+            int base = (int) key & mask;
+            slot = base;
+            for (int i = base + 1; i < base + BUCKET; i++)
+                if (works[i] < works[slot]) slot = i; // Empty, or the least work
+            if (works[slot] == 0) used++;
+        }
+        keys[slot] = key;
+        phis[slot] = phi;
+        deltas[slot] = delta;
+        works[slot] = (int) Math.max(1, Math.min(Integer.MAX_VALUE, work));
+    }
+    /** Clear the entry of a position, if it is stored. */
+    void remove(long key) {
+        int slot = find(key);
+        if (slot < 0) return;
+        works[slot] = 0;
+        used--;
+    }
+    /**
+     * Clear the entries with the least work, a power of 2 at a time,
+     * until at most half the slots are used.
+     * @return the number of entries cleared.
+     */
+    int collect() {
+        int[] counts = new int[32]; // By log2 of work
+        for (int work : works)
+            if (work != 0) counts[31 - Integer.numberOfLeadingZeros(work)]++;
+        int bound = 0;
+        for (int left = used; left > keys.length / 2; bound++)
+            left -= counts[bound];
+        int cleared = 0;
+        for (int i = 0; i < works.length; i++)
+            if (works[i] != 0 && 31 - Integer.numberOfLeadingZeros(works[i]) < bound) {
+                works[i] = 0;
+                cleared++;
+            }
+        used -= cleared;
+        return cleared;
+    }
+    /** Write every slot. */
+    void write(DataOutputStream out) throws IOException {
+        for (int i = 0; i < keys.length; i++) {
+            out.writeLong(keys[i]);
+            out.writeInt(phis[i]);
+            out.writeInt(deltas[i]);
+            out.writeInt(works[i]);
+        }
+    }
+    /** Read every slot, as write() wrote them. */
+    void read(DataInputStream in) throws IOException {
+        used = 0;
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = in.readLong();
+            phis[i] = in.readInt();
+            deltas[i] = in.readInt();
+            works[i] = in.readInt();
+            if (works[i] != 0) used++;
+        }
+    }
+}
+/**
+ * A class proving the values of positions on one board shape.
+ *
+ * Each proof is of one side winning, the attacker. At every position phi
+ * and delta are the proof and disproof numbers of the side to move getting
+ * what it wants: for the attacker a win, for the other side a draw or
+ * better. A position's phi is the least delta of its moves, and its delta
+ * the sum of their phis; a proven position has phi 0 and delta INF, and
+ * a disproven one the other way round. So the attacker's positions are OR
+ * nodes and the other side's AND nodes, with no code for either.
+ *
+ * The search is depth-first (df-pn): it stays below a position while its
+ * numbers are under thresholds, so only the table holds the tree. A win on
+ * the move solves a position at once; a threat to win must be blocked, so
+ * it leaves one move; and a position with every line dead is a draw.
+ *
+ * When a position is solved, its moves' unsolved entries can never be
+ * needed again and are cleared at once; when the table fills, the smallest
+ * subtrees are cleared (see ProofTable). Every so often the table is saved
+ * to a checkpoint file, and a solver made with the same file starts again
+ * from it: a long solve loses at most one checkpoint's work to a restart.
+ */
+class ProofSearch {
+    // Static fields:
+    /** Proof and disproof numbers of a solved position: 0 and INF. */
+    static final int INF = 1 << 30;
+    /** The first int of every checkpoint file: "PNS1". */
+    private static final int MAGIC = 0x504E5331;
+    /** Hashed into the key of a position when 'O' is the attacker. */
+    private static final long O_ATTACKS = 0xD6E8FEB86659FD93L;
+    /** How many nodes go by between looks at the table and the clock. */
+    private static final int CLOCK_NODES = 4096;
+    /** Kinds of move: to a position still in play, or one where the side to move has failed or succeeded. */
+    private static final byte PLAYING = 0, FAILED = 1, SUCCEEDED = 2;
+    // Fields:
+    /** The shape of board. */
+    private final LineTable table;
+    /** The proof and disproof numbers. */
+    private final ProofTable proofs;
+    /** The cells, most lines first: the order moves are tried in. */
+    private final int[] order;
+    /** Moves per ply. */
+    private final int[][] moves;
+    /** The key of the position after each move, per ply. */
+    private final long[][] keys;
+    /** The kind of each move, per ply. */
+    private final byte[][] kinds;
+    /** The phi and delta of each move, per ply, as last seen. */
+    private final int[][] phis, deltas;
+    /** The side proving a win. */
+    private byte attacker;
+    /** The phi and delta of the last position searched. */
+    private int lastPhi, lastDelta;
+    /** The nodes searched. */
+    private long nodes;
+    /** The file the table is saved to, or null. */
+    private Path checkpoint;
+    /** The time between checkpoints, in milliseconds. */
+    private long checkpointMillis = 600000;
+    /** The time of the last checkpoint, in System.nanoTime(). */
+    private long checkpointed = System.nanoTime();
+    /** Constructor given the shape and the log2 of the table's slots. */
+    ProofSearch(LineTable table, int bits) {
+        this.table = table;
+        this.proofs = new ProofTable(bits);
+        int size = table.getM() * table.getN();
+        Integer[] cells = new Integer[size];
+        for (int cell = 0; cell < size; cell++)
+            cells[cell] = cell;
+        int[] starts = table.getCellStarts();
+        Arrays.sort(cells, (a, b) -> (starts[b + 1] - starts[b]) - (starts[a + 1] - starts[a]));
+        this.order = new int[size];
+        for (int i = 0; i < size; i++)
+            order[i] = cells[i];
+        this.moves = new int[size + 1][size];
+        this.keys = new long[size + 1][size];
+        this.kinds = new byte[size + 1][size];
+        this.phis = new int[size + 1][size];
+        this.deltas = new int[size + 1][size];
+    }
+    // Accessors:
+    /** @return the nodes searched. */
+    long getNodes() { return nodes; }
+    /** @return the proof and disproof numbers. */
+    ProofTable getProofs() { return proofs; }
+    /**
+     * Save the table to a file every so many milliseconds. If the file
+     * holds a checkpoint of this shape and table size, start from it.
+     */
+    void setCheckpoint(Path checkpoint, long checkpointMillis) throws IOException {
+        this.checkpoint = checkpoint;
+        this.checkpointMillis = checkpointMillis;
+        if (Files.exists(checkpoint)) restore(checkpoint);
+    }
+    // Methods:
+    /** @return the sum of two numbers, finite sums staying below INF. */
+    private static int add(int a, int b) {
+        return a == INF || b == INF ? INF : Math.min(INF - 1, a + b);
+    }
+    /** @return the stone of the side to move. */
+    private static byte mover(MNKBoard board) {
+        return board.getIsCompTurn() ? MNKBoard.X : MNKBoard.O;
+    }
+    /** @return the key of a board's position, for the current attacker. */
+    private long keyOf(MNKBoard board) {
+        return attacker == MNKBoard.X ? board.getHash() : board.getHash() ^ O_ATTACKS;
+    }
+    /**
+     * @return the value of a position for the side to move, with perfect
+     * play: 1 for a win, 0 for a draw, -1 for a loss.
+     */
+    int value(MNKBoard board) {
+        char state = board.winner();
+        if (state != 'P') return state == 'D' ? 0 : -1; // Won by the last move
+        MNKBoard position = new MNKBoard(board);
+        position.setNet(null);
+        byte mover = mover(position);
+        if (wins(position, mover)) return 1;
+        return wins(position, mover == MNKBoard.X ? MNKBoard.O : MNKBoard.X) ? -1 : 0;
+    }
+    /**
+     * @return a move keeping the value of a position in play, the first in
+     * the order moves are tried (a win on the move if there is one), or -1
+     * if the game is over.
+     */
+    int bestMove(MNKBoard board, int value) {
+        if (board.winner() != 'P') return -1;
+        MNKBoard position = new MNKBoard(board);
+        position.setNet(null);
+        byte mover = mover(position), other = mover == MNKBoard.X ? MNKBoard.O : MNKBoard.X;
+        int win = position.winningCell(mover);
+        if (win >= 0) return win;
+        int first = -1;
+        for (int cell : order) {
+            if (!position.isOpen(cell)) continue;
+            if (first < 0) first = cell;
+            position.makeMove(cell);
+            char state = position.winner();
+            boolean kept = value > 0 ? state == 'P' && wins(position, mover)
+                         : value == 0 ? state == 'D' || state == 'P' && !wins(position, other)
+                         : true;
+            position.undoMove();
+            if (kept) return cell;
+        }
+        return first;
+    }
+    /** @return if the attacker can force a win from a position still in play. */
+    private boolean wins(MNKBoard board, byte attacker) {
+        this.attacker = attacker;
+        mid(board, 0, INF, INF);
+        return mover(board) == attacker ? lastPhi == 0 : lastDelta == 0;
+    }
+    /**
+     * Fill the moves of a ply, with their kinds and keys.
+     * @return the number of moves.
+     */
+    private int expand(MNKBoard board, int ply) {
+        byte mover = mover(board), other = mover == MNKBoard.X ? MNKBoard.O : MNKBoard.X;
+        int[] list = moves[ply];
+        int count = 0;
+        int block = board.winningCell(other);
+        if (block >= 0) list[count++] = block; // Or lose at once
+        else
+            for (int cell : order)
+                if (board.isOpen(cell)) list[count++] = cell;
+        for (int i = 0; i < count; i++) {
+            board.makeMove(list[i]);
+            // No line is made here: a win on the move was taken already
+            kinds[ply][i] = board.winner() != 'D' ? PLAYING
+                          : other == attacker ? FAILED : SUCCEEDED;
+            keys[ply][i] = keyOf(board);
+            phis[ply][i] = kinds[ply][i] == SUCCEEDED ? 0 : kinds[ply][i] == FAILED ? INF : 1;
+            deltas[ply][i] = kinds[ply][i] == SUCCEEDED ? INF : kinds[ply][i] == FAILED ? 0 : 1;
+            board.undoMove();
+        }
+        return count;
+    }
+    /**
+     * Search below a position in play until its phi reaches thPhi or its
+     * delta reaches thDelta, and store its numbers, also left in lastPhi
+     * and lastDelta.
+     */
+    private void mid(MNKBoard board, int ply, int thPhi, int thDelta) {
+        if (++nodes % CLOCK_NODES == 0) tick();
+        long key = keyOf(board);
+        int slot = proofs.find(key);
+        long work = slot < 0 ? 0 : proofs.work(slot);
+        long start = nodes;
+        int phi, delta;
+        if (board.winningCell(mover(board)) >= 0) {
+            phi = 0;
+            delta = INF;
+        } else {
+            int count = expand(board, ply);
+            int[] childPhis = phis[ply], childDeltas = deltas[ply];
+            while (true) {
+                phi = INF;
+                delta = 0;
+                int best = -1, second = INF;
+                for (int i = 0; i < count; i++) {
+                    if (kinds[ply][i] == PLAYING) {
+                        int at = proofs.find(keys[ply][i]);
+                        if (at >= 0) {
+                            childPhis[i] = proofs.phi(at);
+                            childDeltas[i] = proofs.delta(at);
+                        }
+                    }
+                    if (childDeltas[i] < phi) {
+                        second = phi;
+                        phi = childDeltas[i];
+                        best = i;
+                    } else if (childDeltas[i] < second) second = childDeltas[i];
+                    delta = add(delta, childPhis[i]);
+                }
+                if (phi >= thPhi || delta >= thDelta) break;
+                // The best move may go on until its delta passes the second best's
+                // by a quarter, so the search switches back and forth less
+                int childThPhi = (int) Math.min(INF, (long) thDelta - delta + childPhis[best]);
+                int childThDelta = Math.min(thPhi, second == INF ? INF : second + second / 4 + 1);
+                board.makeMove(moves[ply][best]);
+                mid(board, ply + 1, childThPhi, childThDelta);
+                board.undoMove();
+                childPhis[best] = lastPhi;
+                childDeltas[best] = lastDelta;
+            }
+            if (phi == 0 || delta == 0) // Solved: what is below no longer counts
+                for (int i = 0; i < count; i++) {
+                    int at = kinds[ply][i] == PLAYING ? proofs.find(keys[ply][i]) : -1;
+                    if (at >= 0 && proofs.phi(at) != 0 && proofs.delta(at) != 0)
+                        proofs.remove(keys[ply][i]);
+                }
+        }
+        proofs.store(key, phi, delta, work + nodes - start + 1);
+        lastPhi = phi;
+        lastDelta = delta;
+    }
+    /** Collect the table if it is full, and save a checkpoint if one is due. */
+    private void tick() {
+        if (proofs.isFull()) proofs.collect();
+        if (checkpoint != null &&
+            System.nanoTime() - checkpointed > checkpointMillis*1000000) {
+            try {
+                save(checkpoint);
+            } catch (IOException exc) {
+                System.err.println("Checkpoint "+checkpoint+": "+exc.getMessage());
+            }
+            checkpointed = System.nanoTime();
+        }
+    }
+    /**
+     * Save the table to a file, by way of a new file moved over it, so a
+     * crash while saving leaves the last checkpoint whole.
+     */
+    void save(Path file) throws IOException {
+        Path temp = Paths.get(file+".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeUTF(table.getName());
+            out.writeInt(Integer.numberOfTrailingZeros(proofs.size()));
+            out.writeLong(nodes);
+            proofs.write(out);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    /** Start from the table saved to a file. */
+    private void restore(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a proof checkpoint: "+file);
+            if (!in.readUTF().equals(table.getName()) ||
+                in.readInt() != Integer.numberOfTrailingZeros(proofs.size()))
+                throw new IOException("Not a checkpoint for "+table+" in this table size: "+file);
+            try {
+                nodes = in.readLong();
+                proofs.read(in);
+            } catch (EOFException exc) {
+                throw new IOException("Truncated proof checkpoint: "+file);
+            }
+        }
+    }
+    /**
+     * @return an opening book of every position up to some plies from a
+     * board's, each with its value and best move.
+     */
+    OpeningBook book(MNKBoard board, int plies) {
+        Map<Long, Integer> positions = new TreeMap<>();
+        MNKBoard position = new MNKBoard(board);
+        position.setNet(null);
+        addPositions(position, plies, positions);
+        long[] bookKeys = new long[positions.size()];
+        int[] infos = new int[positions.size()];
+        int i = 0;
+        for (Map.Entry<Long, Integer> entry : positions.entrySet()) {
+            bookKeys[i] = entry.getKey();
+            infos[i++] = entry.getValue();
+        }
+        return new OpeningBook(table, bookKeys, infos);
+    }
+    /** Solve a position in play and those up to some plies from it, into a map. */
+    private void addPositions(MNKBoard board, int plies, Map<Long, Integer> positions) {
+        long key = OpeningBook.keyOf(board);
+        if (board.winner() != 'P' || positions.containsKey(key)) return;
+        int value = value(board);
+        positions.put(key, OpeningBook.info(value, bestMove(board, value)));
+        if (plies == 0) return;
+        for (int cell = 0; cell < board.size(); cell++)
+            if (board.isOpen(cell)) {
+                board.makeMove(cell);
+                addPositions(board, plies - 1, positions);
+                board.undoMove();
+            }
+    }
+    /**
+     * Prove the value of an m,n,k board, and write an opening book of the
+     * positions up to some plies from the start.
+     * Arguments: [m] [n] [k] [plies] [book file] [checkpoint file]
+     *            [log2 of table slots] [minutes between checkpoints].
+     */
+    public static void main(String[] args) throws IOException {
+        int m = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int n = args.length > 1 ? Integer.parseInt(args[1]) : m;
+        int k = args.length > 2 ? Integer.parseInt(args[2]) : Math.min(m, n);
+        int plies = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        Path bookFile = Paths.get(args.length > 4 ? args[4] : "opening.book");
+        Path checkpoint = Paths.get(args.length > 5 ? args[5] : "proof.checkpoint");
+        int bits = args.length > 6 ? Integer.parseInt(args[6]) : 22;
+        long minutes = args.length > 7 ? Long.parseLong(args[7]) : 10;
+        LineTable table = LineTable.grid(m, n, k);
+        ProofSearch solver = new ProofSearch(table, bits);
+        solver.setCheckpoint(checkpoint, minutes*60000);
+        long restored = solver.getNodes();
+        MNKBoard board = new MNKBoard(table, true, Level.WIZARD);
+        long start = System.nanoTime();
+        int value = solver.value(board);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s\t%s\t%d nodes\t%.1f s\t%.0f nodes/s%n", table,
+            value > 0 ? "first player wins" : value == 0 ? "draw" : "second player wins",
+            solver.getNodes() - restored, elapsed, (solver.getNodes() - restored) / elapsed);
+        OpeningBook book = solver.book(board, plies);
+        book.save(bookFile);
+        elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d positions to %d plies\t%.1f s\t%d of %d slots used%n",
+            book.size(), plies, elapsed, solver.getProofs().getUsed(), solver.getProofs().size());
+        solver.save(checkpoint);
+    }
+}
@@ -0,0 +1,479 @@
+/**
+ * @author Rohan
+ *
+ * Quantum tic-tac-toe. Each move puts a "spooky" mark, subscripted by
+ * the move's number, in two spaces at once, entangling them. When the
+ * entanglements close a cycle, the other player measures it: they pick
+ * one of the two spaces of the mark which closed it, and every mark
+ * entangled with it collapses into a classical mark. Three classical
+ * marks in a row win; if both sides get a row in one collapse, the row
+ * whose newest mark is older wins. When one space is left, it takes
+ * a classical mark at once.
+ */
+
+import java.util.Random;
+
+/**
+ * A class representing a quantum tic-tac-toe board.
+ *
+ * Marks are numbered by the move that made them, 0 to 8, and each space
+ * holds a mask of the spooky marks in it. The entanglement graph has
+ * the spaces as vertices and the marks as edges; which spaces it
+ * connects is kept by a union-find, so a move tells whether it closed a
+ * cycle in near-constant time. Collapse visits each mark entangled with
+ * the cycle once, so it is linear in the size of what collapses.
+ *
+ * A move is a number, 9a + b for the spaces a <= b of its mark (a == b
+ * for a classical mark). Positions are copied, not undone, so a search
+ * keeps one board per ply and never allocates.
+ *
+ * Computer is always 'X', user is always 'O'.
+ */
+class QuantumBoard {
+    // Static fields:
+    /** The value of pending when no cycle awaits measurement. */
+    static final int NONE = -1;
+    /** The score of a won position. */
+    private static final int WIN = 1000;
+    // Fields:
+    /** The spaces of each mark, by move number. */
+    private final byte[] firstSpace = new byte[9], secondSpace = new byte[9];
+    /** The spooky marks in each space, as a mask of move numbers. */
+    private final int[] spooky = new int[9];
+    /** The classical mark in each space, or -1. */
+    private final byte[] classical = new byte[9];
+    /** The spaces with classical marks of the computer, and of the user. */
+    private int compMask, userMask;
+    /** Union-find parent of each space, over the entanglement graph. */
+    private final byte[] parent = new byte[9];
+    /** Union-find size of each set, kept at its root. */
+    private final byte[] setSize = new byte[9];
+    /** The mark whose cycle awaits measurement, or NONE. */
+    private int pending = NONE;
+    /** The number of moves played. */
+    private int plies;
+    /** The winner so far, as winner() gives it. */
+    private char winner = 'P';
+    /** Tells whether it is the computer's turn. */
+    private boolean isCompTurn;
+    /** Tells whether the computer started. */
+    private final boolean isCompStarted;
+    /** A level object, which tells which level is being played. */
+    private final Level level;
+    /** Random object used to determine a random choice of move. */
+    private final Random rand;
+    /** The marks and spaces waiting in a collapse. */
+    private final byte[] queueMarks = new byte[9], queueSpaces = new byte[9];
+    /** One board per ply of search, made when first needed. */
+    private QuantumBoard[] stack;
+    /** Legal moves per ply of search. */
+    private int[][] moveLists;
+    /** Constructor given level and starter. */
+    QuantumBoard(boolean isCompStarted, Level level) {
+        this(isCompStarted, level, new Random());
+    }
+    /** Constructor given level, starter and the Random to choose moves by. */
+    QuantumBoard(boolean isCompStarted, Level level, Random rand) {
+        this.isCompStarted = isCompStarted;
+        this.isCompTurn = isCompStarted;
+        this.level = level;
+        this.rand = rand;
+        for (int s = 0; s < 9; s++) {
+            classical[s] = -1;
+            parent[s] = (byte) s;
+            setSize[s] = 1;
+        }
+    }
+    // Accessors:
+    /** @return level of board. */
+    Level getLevel() { return level; }
+    /** @return if it is the computer's turn. */
+    boolean getIsCompTurn() { return isCompTurn; }
+    /** @return the number of moves played. */
+    int getPlies() { return plies; }
+    /** @return the mark whose cycle must be measured before the next move, or NONE. */
+    int getPending() { return pending; }
+    /** @return the first space of the pending mark's choice. */
+    int getPendingFirst() { return firstSpace[pending]; }
+    /** @return the second space of the pending mark's choice. */
+    int getPendingSecond() { return secondSpace[pending]; }
+    /**
+     * @return whatever character of the winner.
+     * @return 'X' means the comp won.
+     * @return 'O' means the user won.
+     * @return 'D' means the game is a draw.
+     * @return 'P' means the game is still in progress.
+     */
+    char winner() { return winner; }
+    // Methods:
+    /** Become a copy of another board's position, without allocating. */
+    void copyFrom(QuantumBoard other) {
+        System.arraycopy(other.firstSpace, 0, firstSpace, 0, 9);
+        System.arraycopy(other.secondSpace, 0, secondSpace, 0, 9);
+        System.arraycopy(other.spooky, 0, spooky, 0, 9);
+        System.arraycopy(other.classical, 0, classical, 0, 9);
+        System.arraycopy(other.parent, 0, parent, 0, 9);
+        System.arraycopy(other.setSize, 0, setSize, 0, 9);
+        compMask = other.compMask;
+        userMask = other.userMask;
+        pending = other.pending;
+        plies = other.plies;
+        winner = other.winner;
+        isCompTurn = other.isCompTurn;
+    }
+    /** @return if a mark was made by the computer. */
+    private boolean isComps(int mark) { return (mark % 2 == 0) == isCompStarted; }
+    /** @return the spaces without a classical mark. */
+    int getOpenMask() { return ~(compMask | userMask) & Board.FULL_MASK; }
+    /** Printable version of board: each space's marks, X1 O2... */
+    @Override public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int row = 0; row < 3; row++) {
+            if (row > 0) sb.append("\n\t\t------------+------------+------------");
+            sb.append("\n\t\t");
+            for (int col = 0; col < 3; col++) {
+                int s = 3*row + col;
+                StringBuilder cell = new StringBuilder();
+                if (classical[s] >= 0)
+                    cell.append(isComps(classical[s]) ? " X" : " O").append(classical[s] + 1);
+                else for (int marks = spooky[s]; marks != 0; marks &= marks - 1) {
+                    int mark = Integer.numberOfTrailingZeros(marks);
+                    cell.append(isComps(mark) ? 'x' : 'o').append(mark + 1);
+                }
+                sb.append(String.format("%-12s", cell));
+                if (col < 2) sb.append('|');
+            }
+        }
+        return sb.toString();
+    }
+    /** @return the root of a space's set, halving the path to it. */
+    private int find(int s) {
+        while (parent[s] != s) {
+            parent[s] = parent[parent[s]];
+            s = parent[s];
+        }
+        return s;
+    }
+    /**
+     * Write every legal move into an array.
+     * @return the number of moves.
+     */
+    int legalMoves(int[] moves) {
+        if (winner != 'P' || pending != NONE) return 0;
+        int open = getOpenMask(), count = 0;
+        if (Integer.bitCount(open) == 1) {
+            int s = Integer.numberOfTrailingZeros(open);
+            moves[count++] = 9*s + s;
+            return count;
+        }
+        for (int a = open; a != 0; a &= a - 1)
+            for (int b = a & (a - 1); b != 0; b &= b - 1)
+                moves[count++] = 9*Integer.numberOfTrailingZeros(a)
+                                 + Integer.numberOfTrailingZeros(b);
+        return count;
+    }
+    /** @return if a move may be played now. */
+    boolean isLegal(int move) {
+        if (move < 0 || move >= 81 || winner != 'P' || pending != NONE) return false;
+        int a = move / 9, b = move % 9, open = getOpenMask();
+        if (Integer.bitCount(open) == 1) return a == b && (open & (1 << a)) != 0;
+        return a != b && (open & (1 << a)) != 0 && (open & (1 << b)) != 0;
+    }
+    /**
+     * Play a move for the side to move. If it closes a cycle, the other
+     * side must collapse() it before moving.
+     */
+    void makeMove(int move) {
+        int a = move / 9, b = move % 9, mark = plies++;
+        firstSpace[mark] = (byte) a;
+        secondSpace[mark] = (byte) b;
+        isCompTurn = !isCompTurn;
+        if (a == b) { // The last space: classical at once
+            place(mark, a);
+            decide();
+            return;
+        }
+        spooky[a] |= 1 << mark;
+        spooky[b] |= 1 << mark;
+        int ra = find(a), rb = find(b);
+        if (ra == rb) {
+            pending = mark; // A cycle: it must be measured
+            return;
+        }
+        if (setSize[ra] < setSize[rb]) { int r = ra; ra = rb; rb = r; }
+        parent[rb] = (byte) ra;
+        setSize[ra] += setSize[rb];
+    }
+    /** Put a classical mark in a space. */
+    private void place(int mark, int s) {
+        classical[s] = (byte) mark;
+        if (isComps(mark)) compMask |= 1 << s;
+        else userMask |= 1 << s;
+        spooky[s] = 0;
+    }
+    /**
+     * Measure the pending cycle, putting its last mark in one of its two
+     * spaces. Each space taken forces the space's other spooky marks into
+     * their other spaces, and so on: a breadth-first walk which visits
+     * each entangled mark once.
+     */
+    void collapse(int space) {
+        int placed = 1 << pending, head = 0, tail = 0;
+        queueMarks[tail] = (byte) pending;
+        queueSpaces[tail++] = (byte) space;
+        pending = NONE;
+        while (head < tail) {
+            int mark = queueMarks[head], s = queueSpaces[head++];
+            int others = spooky[s] & ~placed;
+            place(mark, s);
+            for (; others != 0; others &= others - 1) {
+                int other = Integer.numberOfTrailingZeros(others);
+                placed |= 1 << other;
+                queueMarks[tail] = (byte) other;
+                queueSpaces[tail++] = (byte) (firstSpace[other] + secondSpace[other] - s);
+            }
+        }
+        decide();
+    }
+    /** @return the newest mark of a side's oldest row, or 9 if it has none. */
+    private int rowAge(int mask) {
+        int best = 9;
+        for (int line : Board.winMasks)
+            if ((mask & line) == line) {
+                int newest = 0;
+                for (int l = line; l != 0; l &= l - 1)
+                    newest = Math.max(newest, classical[Integer.numberOfTrailingZeros(l)]);
+                best = Math.min(best, newest);
+            }
+        return best;
+    }
+    /** Settle the winner after classical marks are made. */
+    private void decide() {
+        int comp = rowAge(compMask), user = rowAge(userMask);
+        if (comp < user) winner = 'X';
+        else if (user < comp) winner = 'O';
+        else if (getOpenMask() == 0) winner = 'D';
+    }
+    /** @return the board for a ply of search, making the stack when first needed. */
+    private QuantumBoard at(int ply) {
+        if (stack == null) {
+            stack = new QuantumBoard[20]; // Moves and measurements
+            moveLists = new int[20][36];
+            for (int i = 0; i < stack.length; i++)
+                stack[i] = new QuantumBoard(isCompStarted, level);
+        }
+        return stack[ply];
+    }
+    /** @return the worth of the classical marks for the side to move. */
+    private int evaluate() {
+        int own = isCompTurn ? compMask : userMask, opp = isCompTurn ? userMask : compMask;
+        int score = 0;
+        for (int line : Board.winMasks) {
+            int mine = Integer.bitCount(own & line), theirs = Integer.bitCount(opp & line);
+            if (theirs == 0) score += mine * mine;
+            else if (mine == 0) score -= theirs * theirs;
+        }
+        return score;
+    }
+    /** @return the score of a decided board for the side to move. */
+    private int decided(int ply) {
+        if (winner == 'D') return 0;
+        return (winner == 'X') == isCompTurn ? WIN - ply : ply - WIN;
+    }
+    /**
+     * Negamax with alpha-beta over a copy of the position at stack[ply].
+     * A pending cycle is measured first, by the side to move, so both
+     * of its collapses are searched.
+     * @return the score for the side to move.
+     */
+    private int negamax(int ply, int depth, int alpha, int beta) {
+        QuantumBoard board = stack[ply];
+        if (board.winner != 'P') return board.decided(ply);
+        if (board.pending != NONE) {
+            QuantumBoard next = stack[ply + 1];
+            int best = -WIN;
+            for (int choice = 0; choice < 2; choice++) {
+                next.copyFrom(board);
+                next.collapse(choice == 0 ? board.firstSpace[board.pending]
+                                          : board.secondSpace[board.pending]);
+                // Measuring is not a move: the same side is still to move
+                int value = negamax(ply + 1, depth, alpha, beta);
+                best = Math.max(best, value);
+                alpha = Math.max(alpha, value);
+                if (alpha >= beta) break;
+            }
+            return best;
+        }
+        if (depth == 0) return board.evaluate();
+        int[] moves = moveLists[ply];
+        int count = board.legalMoves(moves);
+        int best = -WIN;
+        for (int i = 0; i < count; i++) {
+            QuantumBoard next = stack[ply + 1];
+            next.copyFrom(board);
+            next.makeMove(moves[i]);
+            int value = -negamax(ply + 1, depth - 1, -beta, -alpha);
+            if (value > best) best = value;
+            if (value > alpha) alpha = value;
+            if (alpha >= beta) break;
+        }
+        return best;
+    }
+    /** @return the best move by a search of some depth, ties broken at random. */
+    private int search(int depth) {
+        at(0);
+        int[] moves = moveLists[0];
+        int count = legalMoves(moves);
+        int best = -1, bestValue = -WIN - 1, ties = 0;
+        for (int i = 0; i < count; i++) {
+            stack[1].copyFrom(this);
+            stack[1].makeMove(moves[i]);
+            int value = -negamax(1, depth - 1, -WIN, -bestValue + 1);
+            if (value > bestValue) {
+                bestValue = value;
+                best = moves[i];
+                ties = 1;
+            } else if (value == bestValue && rand.nextInt(++ties) == 0) {
+                best = moves[i];
+            }
+        }
+        return best;
+    }
+    /** @return the better space to measure the pending cycle into, by a search. */
+    private int searchCollapse(int depth) {
+        int best = -1, bestValue = -WIN - 1;
+        for (int choice = 0; choice < 2; choice++) {
+            int space = choice == 0 ? firstSpace[pending] : secondSpace[pending];
+            QuantumBoard board = at(0);
+            board.copyFrom(this);
+            board.collapse(space);
+            int value = negamax(0, depth, -WIN, WIN);
+            if (value > bestValue) {
+                bestValue = value;
+                best = space;
+            }
+        }
+        return best;
+    }
+    /** @return the search depth of a level, or 0 if it doesn't search. */
+    private static int depth(Level level) {
+        switch (level) {
+            case HARD:   return 2;
+            case WIZARD: return 4;
+            default:     return 0;
+        }
+    }
+    /**
+     * @return the space a level measures the pending cycle into.
+     * Easy picks at random; medium takes a win if measuring gives one;
+     * hard and wizard search.
+     */
+    int collapseChoice(Level level) {
+        int first = firstSpace[pending], second = secondSpace[pending];
+        if (level == Level.EASY) return rand.nextBoolean() ? first : second;
+        if (level == Level.MEDIUM) {
+            QuantumBoard board = at(0);
+            board.copyFrom(this);
+            board.collapse(first);
+            boolean wins = board.winner == (isCompTurn ? 'X' : 'O');
+            return wins ? first : second;
+        }
+        return searchCollapse(depth(level));
+    }
+    /**
+     * @return the move of a level, for the side to move.
+     * With MoveProfiler enabled, the move's allocation is accounted;
+     * with EngineMetrics enabled, its time is recorded.
+     */
+    int move(Level level) {
+        if (!MoveProfiler.ENABLED && !EngineMetrics.ENABLED) return choose(level);
+        long before = MoveProfiler.ENABLED ? MoveProfiler.start() : 0;
+        long start = System.nanoTime();
+        int move = choose(level);
+        if (EngineMetrics.ENABLED) EngineMetrics.recordMove(level, System.nanoTime() - start);
+        if (MoveProfiler.ENABLED) MoveProfiler.end(level, before);
+        return move;
+    }
+    /** @return the move of a level, for the side to move. */
+    private int choose(Level level) {
+        switch (level) {
+            case EASY:   return levelEasy();
+            case MEDIUM: return levelMedium();
+            default:     return search(depth(level));
+        }
+    }
+    /** The easy level's move. Easy chooses a random legal move. */
+    int levelEasy() {
+        at(0);
+        int[] moves = moveLists[0];
+        return moves[rand.nextInt(legalMoves(moves))];
+    }
+    /**
+     * The medium level's move.
+     * Medium looks one move ahead: it closes a cycle when every way of
+     * measuring it wins, and otherwise plays randomly.
+     */
+    int levelMedium() {
+        at(0);
+        int[] moves = moveLists[0];
+        int count = legalMoves(moves);
+        char self = isCompTurn ? 'X' : 'O';
+        QuantumBoard board = stack[1];
+        for (int i = 0; i < count; i++) {
+            board.copyFrom(this);
+            board.makeMove(moves[i]);
+            if (board.winner == self) return moves[i];
+            if (board.pending == NONE) continue;
+            int first = board.firstSpace[board.pending], second = board.secondSpace[board.pending];
+            board.collapse(first);
+            if (board.winner != self) continue;
+            board.copyFrom(this);
+            board.makeMove(moves[i]);
+            board.collapse(second);
+            if (board.winner == self) return moves[i];
+        }
+        return moves[rand.nextInt(count)];
+    }
+    /**
+     * Play every level against the easy level, and time the collapses.
+     * Arguments: [games per level].
+     */
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        Random rand = new Random(2013);
+        System.out.println("X\tO\twins\tdraws\tlosses");
+        for (Level level : Level.values()) {
+            int[] results = new int[3];
+            for (int g = 0; g < games; g++) {
+                QuantumBoard board = new QuantumBoard(g % 2 == 0, level, rand);
+                while (board.winner() == 'P') {
+                    Level mover = board.getIsCompTurn() ? level : Level.EASY;
+                    if (board.getPending() != NONE) board.collapse(board.collapseChoice(mover));
+                    if (board.winner() == 'P') board.makeMove(board.move(mover));
+                }
+                results[board.winner() == 'X' ? 0 : board.winner() == 'D' ? 1 : 2]++;
+            }
+            System.out.printf("%s\t%s\t%.3f\t%.3f\t%.3f%n", level, Level.EASY,
+                results[0] / (double) games, results[1] / (double) games,
+                results[2] / (double) games);
+        }
+        // Random games, each move checked for a cycle and each cycle collapsed
+        QuantumBoard empty = new QuantumBoard(true, Level.EASY, rand);
+        QuantumBoard board = new QuantumBoard(true, Level.EASY, rand);
+        long moves = 0, start = System.nanoTime();
+        for (int g = 0; g < 1000000; g++) {
+            board.copyFrom(empty);
+            while (board.winner() == 'P') {
+                if (board.getPending() != NONE)
+                    board.collapse(rand.nextBoolean() ? board.getPendingFirst()
+                                                      : board.getPendingSecond());
+                if (board.winner() == 'P') {
+                    board.makeMove(board.levelEasy());
+                    moves++;
+                }
+            }
+        }
+        double ns = (System.nanoTime() - start) / (double) moves;
+        System.out.printf("%d random moves with their collapses: %.1f ns/move%n", moves, ns);
+    }
+}
@@ -0,0 +1,381 @@
+/**
+ * @author Rohan
+ *
+ * Qubic: tic-tac-toe in three dimensions, on a 4x4x4 cube,
+ * where four in a row along any of the 76 lines wins.
+ */
+
+import java.util.Random;
+
+/**
+ * A class representing a Qubic board.
+ * Each side is a 64-bit mask, bit 16z + 4y + x being the cell at
+ * (x, y, z), and every line is a precomputed mask, as on Board.
+ * Moves are made for whichever side is to move, and can be undone.
+ *
+ * Computer is always 'X', user is always 'O'.
+ * With SOLVE_EMPTIES open cells or fewer the wizard level solves the
+ * game exactly, in milliseconds. Before that it searches, one ply deeper
+ * at a time, for as long as its move may take; the hard level searches
+ * two plies.
+ *
+ * There is no endgame tablebase: Qubic has about 10^20 positions, and
+ * a table of the endgames of sampled games, even thousands of them,
+ * held none of the late positions other games went on to reach.
+ */
+class QubicBoard {
+    // Static fields:
+    /** The number of cells. */
+    static final int SIZE = 64;
+    /** Every line of four, as a mask. */
+    static final long[] lines = makeLines();
+    /** The lines through each cell. */
+    private static final long[][] cellLines = new long[SIZE][];
+    static {
+        for (int cell = 0; cell < SIZE; cell++) {
+            int count = 0;
+            for (long line : lines)
+                if ((line & 1L << cell) != 0) count++;
+            cellLines[cell] = new long[count];
+            count = 0;
+            for (long line : lines)
+                if ((line & 1L << cell) != 0) cellLines[cell][count++] = line;
+        }
+    }
+    /** The score of a win on the move. Wins further away score less. */
+    private static final int WIN = 1000000;
+    /** How many nodes go by between looks at the clock. */
+    private static final int CLOCK_NODES = 256;
+    /** The log2 of the transposition table's slots. */
+    private static final int TABLE_BITS = 16;
+    /** The open cells at which the wizard level solves the game, whatever its time. */
+    static final int SOLVE_EMPTIES = 12;
+    // Fields:
+    /** The computer's cells. */
+    private long compMask;
+    /** The user's cells. */
+    private long userMask;
+    /** The cells played, in order. */
+    private final int[] moveSeq = new int[SIZE];
+    /** The number of moves played. */
+    private int plies;
+    /** The winner so far, as winner() gives it. */
+    private char winner = 'P';
+    /** Tells whether it is the computer's turn. */
+    private boolean isCompTurn;
+    /** Tells whether the computer started. */
+    private final boolean isCompStarted;
+    /** A level object, which tells which level is being played. */
+    private final Level level;
+    /** Random object used to determine a random choice of move. */
+    private final Random rand;
+    /** How deep the wizard level searches at most, before SOLVE_EMPTIES. */
+    private int wizardDepth = SIZE;
+    /** The time the wizard level may think, in milliseconds. */
+    private long moveMillis = 1000;
+    /**
+     * The transposition table of the searching levels: made with a board
+     * of those levels, so no move pays for it, or else when first needed.
+     */
+    private TransTable table;
+    /** The System.nanoTime() the search in progress must stop by. */
+    private long deadline;
+    /** The nodes searched, for the clock. */
+    private long nodes;
+    /** Tells whether the search in progress ran out of time. */
+    private boolean stopped;
+    /** Constructor given level and starter. */
+    QubicBoard(boolean isCompStarted, Level level) {
+        this(isCompStarted, level, new Random());
+    }
+    /** Constructor given level, starter and the Random to choose moves by. */
+    QubicBoard(boolean isCompStarted, Level level, Random rand) {
+        this.isCompStarted = isCompStarted;
+        this.isCompTurn = isCompStarted;
+        this.level = level;
+        this.rand = rand;
+        if (level == Level.HARD || level == Level.WIZARD) table = new TransTable(TABLE_BITS);
+    }
+    /** @return every line of four in the cube, each a mask. */
+    private static long[] makeLines() {
+        long[] found = new long[76];
+        int count = 0;
+        for (int dz = -1; dz <= 1; dz++)
+            for (int dy = -1; dy <= 1; dy++)
+                for (int dx = -1; dx <= 1; dx++) {
+                    // One of each pair of opposite directions
+                    if (dz < 0 || (dz == 0 && (dy < 0 || (dy == 0 && dx <= 0))))
+                        continue;
+                    for (int cell = 0; cell < SIZE; cell++) {
+                        int x = cell & 3, y = (cell >> 2) & 3, z = cell >> 4;
+                        int ex = x + 3*dx, ey = y + 3*dy, ez = z + 3*dz;
+                        if (ex < 0 || ex > 3 || ey < 0 || ey > 3 || ez < 0 || ez > 3)
+                            continue; // The line would leave the cube
+                        long line = 0;
+                        for (int i = 0; i < 4; i++)
+                            line |= 1L << (16*(z + i*dz) + 4*(y + i*dy) + x + i*dx);
+                        found[count++] = line;
+                    }
+                }
+        return found;
+    }
+    // Accessors:
+    /** @return level of board. */
+    Level getLevel() { return level; }
+    /** @return if the computer started. */
+    boolean getIsCompStarted() { return isCompStarted; }
+    /** @return if it is the computer's turn. */
+    boolean getIsCompTurn() { return isCompTurn; }
+    /** @return the number of moves played. */
+    int getPlies() { return plies; }
+    /** @return the cells of the side to move. */
+    long moverMask() { return isCompTurn ? compMask : userMask; }
+    /** @return the cells of the side not to move. */
+    long opponentMask() { return isCompTurn ? userMask : compMask; }
+    /** @return if a cell is open. */
+    boolean isOpen(int cell) { return ((compMask | userMask) & 1L << cell) == 0; }
+    /**
+     * @return whatever character of the winner.
+     * @return 'X' means the comp won.
+     * @return 'O' means the user won.
+     * @return 'D' means the game is a draw.
+     * @return 'P' means the game is still in progress.
+     */
+    char winner() { return winner; }
+    /** Set how deep the wizard level searches at most. */
+    void setWizardDepth(int wizardDepth) { this.wizardDepth = wizardDepth; }
+    /** Set the time the wizard level may think for, in milliseconds. */
+    void setMoveMillis(long moveMillis) { this.moveMillis = moveMillis; }
+    // Methods:
+    /** Get an 'X', 'O' or ' ' for a cell. */
+    char refer(int cell) {
+        if ((compMask & 1L << cell) != 0) return 'X';
+        if ((userMask & 1L << cell) != 0) return 'O';
+        return ' ';
+    }
+    /** Printable version of board: the four layers side by side. */
+    @Override public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int y = 3; y >= 0; y--) {
+            sb.append("\n\t");
+            for (int z = 0; z < 4; z++) {
+                for (int x = 0; x < 4; x++)
+                    sb.append(' ').append(refer(16*z + 4*y + x)).append(x < 3 ? " |" : "");
+                sb.append("\t");
+            }
+        }
+        return sb.toString();
+    }
+    /** @return if a mask holds a line through a cell. */
+    static boolean hasLine(long mask, int cell) {
+        for (long line : cellLines[cell])
+            if ((mask & line) == line) return true;
+        return false;
+    }
+    /** @return if a mask holds any line. */
+    static boolean hasLine(long mask) {
+        for (long line : lines)
+            if ((mask & line) == line) return true;
+        return false;
+    }
+    /** Play a cell for the side to move. */
+    void makeMove(int cell) {
+        long own;
+        if (isCompTurn) own = compMask |= 1L << cell;
+        else own = userMask |= 1L << cell;
+        moveSeq[plies++] = cell;
+        if (hasLine(own, cell)) winner = isCompTurn ? 'X' : 'O';
+        else if (plies == SIZE) winner = 'D';
+        isCompTurn = !isCompTurn;
+    }
+    /** Take back the last move. */
+    void undoMove() {
+        int cell = moveSeq[--plies];
+        compMask &= ~(1L << cell);
+        userMask &= ~(1L << cell);
+        winner = 'P';
+        isCompTurn = !isCompTurn;
+    }
+    /** @return a cell completing a line of own, or -1. */
+    static int winningCell(long own, long opp) {
+        long open = ~(own | opp);
+        for (long line : lines)
+            if (Long.bitCount(own & line) == 3 && (open & line) != 0)
+                return Long.numberOfTrailingZeros(open & line);
+        return -1;
+    }
+    /** @return the worth of a position for the first side: open lines. */
+    private static int evaluate(long own, long opp) {
+        int score = 0;
+        for (long line : lines) {
+            int mine = Long.bitCount(own & line), theirs = Long.bitCount(opp & line);
+            if (theirs == 0) score += (1 << 2*mine) - 1;
+            else if (mine == 0) score -= (1 << 2*theirs) - 1;
+        }
+        return score;
+    }
+    /** @return the key of a position in the table, a hash of both sides' cells. */
+    private static long keyOf(long own, long opp) {
+        long h = own * 0x9E3779B97F4A7C15L + Long.rotateLeft(opp, 32) * 0xC2B2AE3D27D4EB4FL;
+        h = (h ^ h >>> 29) * 0xBF58476D1CE4E5B9L;
+        return h ^ h >>> 32;
+    }
+    /**
+     * Negamax with alpha-beta on masks. A side that can win does; a side
+     * facing a win must block, which prunes most of the tree. Positions
+     * are kept in the table, and its move is tried first.
+     * @return the score for the side to move, own, or 0 once out of time.
+     */
+    private int negamax(long own, long opp, int depth, int alpha, int beta) {
+        if (winningCell(own, opp) >= 0) return WIN - 1;
+        long open = ~(own | opp);
+        if (open == 0) return 0;
+        if (depth == 0) return evaluate(own, opp);
+        if (++nodes % CLOCK_NODES == 0 && System.nanoTime() > deadline) stopped = true;
+        if (stopped) return 0;
+        long key = keyOf(own, opp);
+        long entry = table.probe(key);
+        if (entry != 0 && TransTable.depth(entry) >= depth) {
+            int stored = TransTable.score(entry);
+            int bound = TransTable.bound(entry);
+            if (bound == TransTable.EXACT) return stored;
+            if (bound == TransTable.LOWER) alpha = Math.max(alpha, stored);
+            else beta = Math.min(beta, stored);
+            if (alpha >= beta) return stored;
+        }
+        int alphaOrig = alpha;
+        int block = winningCell(opp, own);
+        long moves = block >= 0 ? 1L << block : open;
+        int first = entry == 0 ? -1 : TransTable.move(entry);
+        if (first < 0 || (moves & 1L << first) == 0) first = Long.numberOfTrailingZeros(moves);
+        int best = -WIN, bestMove = first;
+        for (long bit = 1L << first; moves != 0; moves &= ~bit, bit = moves & -moves) {
+            int value = -negamax(opp, own | bit, depth - 1, -beta, -alpha);
+            if (stopped) return 0;
+            if (value > WIN - 1000) value--; // Later wins are worth less
+            else if (value < 1000 - WIN) value++;
+            if (value > best) {
+                best = value;
+                bestMove = Long.numberOfTrailingZeros(bit);
+            }
+            if (value > alpha) alpha = value;
+            if (alpha >= beta) break;
+        }
+        int bound = best <= alphaOrig ? TransTable.UPPER
+                  : best >= beta ? TransTable.LOWER : TransTable.EXACT;
+        table.store(key, depth, bound, best, bestMove);
+        return best;
+    }
+    /**
+     * @return the best cell by searches one ply deeper each time, up to
+     * some depth, until a deadline of System.nanoTime(). The move of the
+     * last search to finish is played; the first, one ply deep, always
+     * finishes. A search as deep as the open cells is exact.
+     */
+    private int search(int maxDepth, long deadline) {
+        long own = moverMask(), opp = opponentMask();
+        int win = winningCell(own, opp);
+        if (win >= 0) return win;
+        int block = winningCell(opp, own);
+        if (block >= 0) return block;
+        maxDepth = Math.min(maxDepth, Long.bitCount(~(own | opp)));
+        if (table == null) table = new TransTable(TABLE_BITS);
+        table.newSearch();
+        this.deadline = deadline;
+        stopped = false;
+        int best = -1;
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            int found = -1, alpha = -WIN;
+            long moves = ~(own | opp);
+            int first = best < 0 ? Long.numberOfTrailingZeros(moves) : best;
+            for (long bit = 1L << first; moves != 0; moves &= ~bit, bit = moves & -moves) {
+                int value = -negamax(opp, own | bit, depth - 1, -WIN, -alpha);
+                if (stopped) break;
+                if (value > alpha || found < 0) {
+                    alpha = value;
+                    found = Long.numberOfTrailingZeros(bit);
+                }
+            }
+            if (stopped) break; // Out of time: keep the last move found
+            best = found;
+            if (Math.abs(alpha) > WIN - 1000) break; // A win or loss found is sure
+        }
+        return best;
+    }
+    /**
+     * @return the move of a level, for the side to move.
+     * With MoveProfiler enabled, the move's allocation is accounted;
+     * with EngineMetrics enabled, its time is recorded.
+     */
+    int move(Level level) {
+        long start = System.nanoTime();
+        if (!MoveProfiler.ENABLED && !EngineMetrics.ENABLED) return choose(level, start);
+        long before = MoveProfiler.ENABLED ? MoveProfiler.start() : 0;
+        int move = choose(level, start);
+        if (EngineMetrics.ENABLED) EngineMetrics.recordMove(level, System.nanoTime() - start);
+        if (MoveProfiler.ENABLED) MoveProfiler.end(level, before);
+        return move;
+    }
+    /** @return the move of a level, for the side to move, begun at a System.nanoTime(). */
+    private int choose(Level level, long start) {
+        switch (level) {
+            case EASY:   return levelEasy();
+            case MEDIUM: return levelMedium();
+            case HARD:   return levelHard();
+            default:     return levelWizard(start);
+        }
+    }
+    /** The easy level's move. Easy chooses a random open cell. */
+    int levelEasy() {
+        long open = ~(compMask | userMask);
+        return Utility.nthSetBit(open, rand.nextInt(Long.bitCount(open)));
+    }
+    /**
+     * The medium level's move.
+     * Medium plays like a normal human. Win or block, or play randomly.
+     */
+    int levelMedium() {
+        int cell = winningCell(moverMask(), opponentMask());
+        if (cell < 0) cell = winningCell(opponentMask(), moverMask());
+        return cell < 0 ? levelEasy() : cell;
+    }
+    /** The hard level's move: a shallow search. */
+    int levelHard() { return search(2, Long.MAX_VALUE); }
+    /**
+     * The wizard level's move: by an exact search near the end, or else
+     * by a deeper search, as deep as the time allows.
+     */
+    int levelWizard() { return levelWizard(System.nanoTime()); }
+    /** The wizard level's move, begun at a System.nanoTime(). */
+    private int levelWizard(long start) {
+        int empties = SIZE - plies;
+        if (empties <= SOLVE_EMPTIES) return search(empties, Long.MAX_VALUE);
+        return search(wizardDepth, start + moveMillis*1000000);
+    }
+    /**
+     * Time the wizard's exact solves: play medium games until some open
+     * cells are left, and print the mean and longest time of the
+     * wizard's move from there.
+     * Arguments: [open cells] [positions] [seed].
+     */
+    public static void main(String[] args) {
+        int empties = args.length > 0 ? Integer.parseInt(args[0]) : SOLVE_EMPTIES;
+        int positions = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        Random rand = new Random(args.length > 2 ? Long.parseLong(args[2]) : 2013);
+        long total = 0, longest = 0;
+        for (int found = 0; found < positions; ) {
+            QubicBoard board = new QubicBoard(true, Level.WIZARD, rand);
+            while (board.winner() == 'P' && SIZE - board.getPlies() > empties)
+                board.makeMove(board.levelMedium());
+            if (board.winner() != 'P') continue; // Over too soon
+            long start = System.nanoTime();
+            board.search(empties, Long.MAX_VALUE);
+            long elapsed = System.nanoTime() - start;
+            total += elapsed;
+            longest = Math.max(longest, elapsed);
+            found++;
+        }
+        System.out.printf("%d positions with %d open cells: mean %.3f ms, longest %.3f ms%n",
+                          positions, empties, total / 1e6 / positions, longest / 1e6);
+    }
+}
@@ -0,0 +1,378 @@
+/**
+ * @author Rohan
+ *
+ * The search behind the harder levels of the m,n,k game:
+ * negamax with alpha-beta pruning, iterative deepening, move ordering
+ * and a transposition table.
+ */
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size transposition table keyed by Zobrist hashes.
+ * Entries live in buckets of two slots. A new entry replaces the slot with
+ * the same key, or else one left from an earlier search, or else the
+ * shallower one, so deep results survive while memory stays bounded.
+ *
+ * An entry is packed into one long: the score in the low 32 bits, then
+ * 16 bits of move, 8 of depth, 2 of bound type and 5 of search age.
+ * The top bit marks a slot as used.
+ *
+ * Threads may share a table without locks: a slot stores its key XORed
+ * with its entry, so a slot torn by two threads writing at once no longer
+ * matches its key and reads as a miss.
+ */
+class TransTable {
+    // Static fields:
+    /** Bound types. */
+    static final int EXACT = 0, LOWER = 1, UPPER = 2;
+    /** Marks a used slot, so an entry is never 0. */
+    private static final long USED = 1L << 63;
+    // Fields:
+    /** The hash of the position in each slot, XORed with its entry. */
+    private final long[] keys;
+    /** The packed entry in each slot. */
+    private final long[] data;
+    /** Mask taking a hash to a bucket. */
+    private final int mask;
+    /** Age of the current search, which older entries give way to. */
+    private int age;
+    /** Constructor given the log2 of the number of slots. */
+    TransTable(int bits) {
+        keys = new long[1 << bits];
+        data = new long[1 << bits];
+        mask = (1 << bits) - 2; // Even slot of each bucket
+    }
+    // Accessors:
+    /** @return the number of slots. */
+    int size() { return keys.length; }
+    /** Start a new search, so entries left from old ones are replaced. */
+    void newSearch() { age = (age + 1) & 31; }
+    /** @return the score of an entry. */
+    static int score(long entry) { return (int) entry; }
+    /** @return the move of an entry, or -1 if it has none. */
+    static int move(long entry) { return (int) ((entry >>> 32) & 0xFFFF) - 1; }
+    /** @return the depth of an entry. */
+    static int depth(long entry) { return (int) ((entry >>> 48) & 0xFF); }
+    /** @return the bound type of an entry. */
+    static int bound(long entry) { return (int) ((entry >>> 56) & 3); }
+    /** @return the search age of an entry. */
+    private static int age(long entry) { return (int) ((entry >>> 58) & 31); }
+    // Methods:
+    /** @return the entry of a position, or 0 if it isn't stored. */
+    long probe(long key) {
+        int i = (int) key & mask;
+        long entry = data[i];
+        if ((keys[i] ^ entry) == key && entry != 0) return entry;
+        entry = data[i+1];
+        if ((keys[i+1] ^ entry) == key && entry != 0) return entry;
+        return 0;
+    }
+    /** Store the result of searching a position. */
+    void store(long key, int depth, int bound, int score, int move) {
+        int i = (int) key & mask;
+        long first = data[i], second = data[i+1];
+        if ((keys[i] ^ first) != key) {
+            if ((keys[i+1] ^ second) == key)
+                i++; // Update the same position
+            else if (age(first) == age &&
+                     (age(second) != age || depth(second) < depth(first)))
+                i++; // Or replace the older or shallower slot
+        }
+        long entry = USED | (long) age << 58 | (long) bound << 56
+                   | (long) Math.min(depth, 255) << 48 | (long) (move + 1) << 32
+                   | (score & 0xFFFFFFFFL);
+        keys[i] = key ^ entry;
+        data[i] = entry;
+    }
+}
+/**
+ * A class which chooses moves on an MNKBoard by searching it.
+ * A Searcher keeps its transposition table and history between moves,
+ * so it should be used for one game at a time.
+ */
+class Searcher {
+    // Static fields:
+    /** The score of a win on the move. Wins further away score less. */
+    static final int WIN = 1000000000;
+    /** Scores past this are wins or losses, not evaluations. */
+    private static final int WON = WIN - 10000;
+    /**
+     * How many nodes go by between looks at the clock, on a small board.
+     * A node costs time in step with the cells, which it orders, so a
+     * board of more cells looks as many times more often (see fit), and
+     * even a large board stops soon after its deadline.
+     */
+    private static final int CLOCK_NODES = 256;
+    /** The cells of a board on which the clock is looked at every node. */
+    private static final int CLOCK_CELLS = CLOCK_NODES * 64;
+    /**
+     * The plies fit() makes move buffers for. Deeper plies get theirs when
+     * a search first reaches them, so the buffers grow with the depth
+     * searched, not with the board's size squared.
+     */
+    private static final int FIRST_PLIES = 16;
+    /**
+     * The most a history score may reach before the history is halved,
+     * well short of overflowing when added to the rest of a move's order.
+     */
+    private static final int HISTORY_MAX = 1 << 24;
+    // Fields:
+    /** The transposition table, which may be shared with other threads. */
+    private final TransTable table;
+    /** Tells whether the table belongs to this Searcher alone. */
+    private final boolean ownsTable;
+    /** Shuffles the move order of helper threads; 0 for the main one. */
+    private final int helper;
+    /** Moves per ply, made once so searching doesn't allocate. */
+    private int[][] moves = new int[0][];
+    /** Ordering scores of the moves, per ply. */
+    private int[][] orders = new int[0][];
+    /** Per side and cell, how often the cell refuted a position. */
+    private int[][] history = new int[2][0];
+    /** Nodes searched by the last search. */
+    private long nodes;
+    /** Table probes by the last search, and those which found an entry. */
+    private long probes, hits;
+    /** Time at which the search must stop, in System.nanoTime(). */
+    private long deadline;
+    /** How many nodes go by between looks at the clock, on this board. */
+    private int clockNodes = CLOCK_NODES;
+    /** The nodes at which the search must stop. */
+    private long maxNodes;
+    /** Tells whether the search ran out of time. */
+    private boolean aborted;
+    /** Set from another thread to make the search stop. */
+    private volatile boolean stopped;
+    /** The score of the last search's move. */
+    private int score;
+    /** The deepest iteration the last search finished. */
+    private int depth;
+    /** Constructor given the log2 of the transposition table's slots. */
+    Searcher(int tableBits) {
+        this.table = new TransTable(tableBits);
+        this.ownsTable = true;
+        this.helper = 0;
+    }
+    /**
+     * Constructor for one of several threads searching together.
+     * @param table the table shared by all the threads.
+     * @param helper 0 for the main thread, or a helper's number.
+     */
+    Searcher(TransTable table, int helper) {
+        this.table = table;
+        this.ownsTable = false;
+        this.helper = helper;
+    }
+    // Accessors:
+    /** @return the nodes searched by the last search. */
+    long getNodes() { return nodes; }
+    /** @return the score of the last search's move for its mover. */
+    int getScore() { return score; }
+    /** @return the deepest iteration the last search finished. */
+    int getDepth() { return depth; }
+    /** Make a running search stop, or let the next one run. */
+    void setStopped(boolean stopped) { this.stopped = stopped; }
+    // Methods:
+    /**
+     * Size the buffers for a board: the history, and the moves of the
+     * first plies. Called before the first move, it keeps allocation out
+     * of the move's time.
+     */
+    void fit(MNKBoard board) {
+        int size = board.size();
+        if (history[0].length == size) return;
+        clockNodes = Math.max(1, Math.min(CLOCK_NODES, CLOCK_CELLS / size));
+        moves = new int[Math.min(FIRST_PLIES, size + 1)][size];
+        orders = new int[moves.length][size];
+        history = new int[2][size];
+    }
+    /**
+     * Halve the history, so that old cutoffs count for less than new
+     * ones and no score grows without bound.
+     */
+    private void ageHistory() {
+        for (int[] side : history)
+            for (int cell = 0; cell < side.length; cell++)
+                side[cell] >>= 1;
+    }
+    /** Give every ply up to one its buffers, doubling the plies buffered. */
+    private void reach(int ply) {
+        if (ply < moves.length) return;
+        int size = history[0].length, from = moves.length;
+        int plies = Math.min(size + 1, Math.max(ply + 1, 2*from));
+        moves = Arrays.copyOf(moves, plies);
+        orders = Arrays.copyOf(orders, plies);
+        for (int i = from; i < plies; i++) {
+            moves[i] = new int[size];
+            orders[i] = new int[size];
+        }
+    }
+    /**
+     * Search a board by iterative deepening, one ply deeper each time,
+     * until maxDepth is reached, the game is decided, or time runs out.
+     * The board is left as it was.
+     * @return the best move found, by the last finished iteration,
+     * or -1 if the board is full.
+     */
+    int search(MNKBoard board, int maxDepth, long millis) {
+        return search(board, maxDepth, millis, Long.MAX_VALUE);
+    }
+    /**
+     * Search as search(board, maxDepth, millis) does, stopping also after
+     * some number of nodes.
+     * @return the best move found, by the last finished iteration.
+     */
+    int search(MNKBoard board, int maxDepth, long millis, long maxNodes) {
+        return searchUntil(board, maxDepth, System.nanoTime() + millis*1000000, maxNodes);
+    }
+    /**
+     * Search as search(board, maxDepth, millis, maxNodes) does, until a
+     * deadline in System.nanoTime(), so that a move's budget can run from
+     * when the move was asked for.
+     * @return the best move found, by the last finished iteration.
+     */
+    int searchUntil(MNKBoard board, int maxDepth, long deadline, long maxNodes) {
+        long start = System.nanoTime();
+        fit(board);
+        ageHistory();
+        this.maxNodes = maxNodes;
+        if (ownsTable) table.newSearch();
+        nodes = probes = hits = 0;
+        aborted = false;
+        this.deadline = deadline;
+        int best = -1;
+        maxDepth = Math.max(1, Math.min(maxDepth, board.size() - board.getPlies()));
+        for (int d = 1; d <= maxDepth; d++) {
+            int move = searchRoot(board, d);
+            if (aborted && best >= 0) break; // Keep the finished iteration
+            best = move;
+            depth = d;
+            if (aborted || Math.abs(score) > WON) break; // Decided
+        }
+        if (EngineMetrics.ENABLED)
+            EngineMetrics.recordSearch(nodes, System.nanoTime() - start, probes, hits);
+        return best;
+    }
+    /** Search the root to a depth. @return the best move, or -1 if there is none. */
+    private int searchRoot(MNKBoard board, int depth) {
+        int count = orderMoves(board, 0);
+        if (count == 0) { // A full board
+            score = 0;
+            return -1;
+        }
+        int alpha = -WIN, best = -1;
+        for (int i = 0; i < count; i++) {
+            int move = nextMove(0, i, count);
+            board.makeMove(move);
+            char state = board.winner(); // Known at once from the lines
+            int value = state == 'D' ? 0 : state != 'P' ? WIN - 1
+                : -negamax(board, depth - 1, 1, -WIN, -alpha);
+            board.undoMove();
+            if (aborted) break;
+            if (value > alpha || i == 0) { alpha = value; best = move; }
+        }
+        if (!aborted) {
+            score = alpha;
+            table.store(board.getHash(), depth, TransTable.EXACT, alpha, best);
+        }
+        return best;
+    }
+    /**
+     * Negamax with alpha-beta pruning.
+     * @return the score of the board for the side to move.
+     */
+    private int negamax(MNKBoard board, int depth, int ply, int alpha, int beta) {
+        if (++nodes % clockNodes == 0 &&
+            (stopped || System.nanoTime() > deadline) || nodes > maxNodes)
+            aborted = true;
+        if (aborted) return 0;
+        if (depth == 0) return board.evaluate();
+        long key = board.getHash();
+        long entry = table.probe(key);
+        probes++;
+        if (entry != 0) hits++;
+        if (entry != 0 && TransTable.depth(entry) >= depth) {
+            int stored = fromTable(TransTable.score(entry), ply);
+            int bound = TransTable.bound(entry);
+            if (bound == TransTable.EXACT) return stored;
+            if (bound == TransTable.LOWER) alpha = Math.max(alpha, stored);
+            else beta = Math.min(beta, stored);
+            if (alpha >= beta) return stored;
+        }
+        int alphaOrig = alpha;
+        int count = orderMoves(board, ply);
+        if (entry != 0) promote(ply, TransTable.move(entry), count);
+        int best = -WIN, bestMove = -1;
+        for (int i = 0; i < count; i++) {
+            int move = nextMove(ply, i, count);
+            board.makeMove(move);
+            char state = board.winner();
+            int value = state == 'D' ? 0 : state != 'P' ? WIN - ply - 1
+                : -negamax(board, depth - 1, ply + 1, -beta, -alpha);
+            board.undoMove();
+            if (aborted) return 0;
+            if (value > best) { best = value; bestMove = move; }
+            if (value > alpha) alpha = value;
+            if (alpha >= beta) { // Cutoff: remember the refutation
+                int[] hist = history[board.getIsCompTurn() ? 0 : 1];
+                if ((hist[move] += depth*depth) > HISTORY_MAX) ageHistory();
+                break;
+            }
+        }
+        int bound = best <= alphaOrig ? TransTable.UPPER
+                  : best >= beta ? TransTable.LOWER : TransTable.EXACT;
+        table.store(key, depth, bound, toTable(best, ply), bestMove);
+        return best;
+    }
+    /** @return a score made relative to the node, for the table. */
+    private static int toTable(int score, int ply) {
+        return score > WON ? score + ply : score < -WON ? score - ply : score;
+    }
+    /** @return a score from the table made relative to the root. */
+    private static int fromTable(int score, int ply) {
+        return score > WON ? score - ply : score < -WON ? score + ply : score;
+    }
+    /**
+     * Fill the move buffer of a ply with the open cells, each scored by
+     * its history and the number of lines through it. Helpers add a little
+     * noise of their own, so that threads explore different moves first.
+     * @return the number of moves.
+     */
+    private int orderMoves(MNKBoard board, int ply) {
+        reach(ply);
+        int[] list = moves[ply], order = orders[ply];
+        int[] hist = history[board.getIsCompTurn() ? 0 : 1];
+        int count = 0;
+        for (int cell = 0; cell < board.size(); cell++)
+            if (board.isOpen(cell)) {
+                list[count] = cell;
+                order[count++] = hist[cell] + board.getLineCount(cell)
+                    + (helper == 0 ? 0 : (cell + 31*helper)*0x9E3779B1 >>> 29);
+            }
+        return count;
+    }
+    /** Put the move from the table first. */
+    private void promote(int ply, int move, int count) {
+        for (int i = 0; i < count; i++)
+            if (moves[ply][i] == move) {
+                orders[ply][i] = Integer.MAX_VALUE;
+                return;
+            }
+    }
+    /**
+     * Selection sort, one step at a time: swap the best remaining move
+     * into place i. Most nodes cut off after a move or two.
+     * @return the move at place i.
+     */
+    private int nextMove(int ply, int i, int count) {
+        int[] list = moves[ply], order = orders[ply];
+        int top = i;
+        for (int j = i + 1; j < count; j++)
+            if (order[j] > order[top]) top = j;
+        int move = list[top], value = order[top];
+        list[top] = list[i];    order[top] = order[i];
+        list[i] = move;         order[i] = value;
+        return move;
+    }
+}
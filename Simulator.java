@@ -0,0 +1,143 @@
+/**
+ * @author Rohan
+ *
+ * Headless self-play: the levels play each other, with no console,
+ * as fast as every core allows.
+ */
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A class which plays matches between two levels on Board.
+ * The first level plays 'X' (the computer's side), the second 'O';
+ * they take turns to start. Each thread has its own Random, seeded from
+ * the match seed and the thread's number, so a match can be replayed,
+ * and its own two boards (one per starter), reset for every game, so
+ * playing allocates nothing.
+ *
+ * Run with -Dttt.profileMoves=true to print each level's allocation
+ * per move (see MoveProfiler) after the tables, with -Dttt.metrics=true
+ * to print the EngineMetrics too, and with -Dttt.gameLog=file to append
+ * every game to a GameLog.
+ */
+class Simulator {
+    // Static fields:
+    /** Result slots of a match: first level's wins, draws, losses. */
+    static final int WINS = 0, DRAWS = 1, LOSSES = 2;
+    // Fields:
+    /** The threads games are played on. */
+    private final ExecutorService pool;
+    /** The number of threads. */
+    private final int threads;
+    /** Constructor given the number of threads. */
+    Simulator(int threads) {
+        this.threads = threads;
+        this.pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "simulator");
+            thread.setDaemon(true); // Never keep the program running
+            return thread;
+        });
+    }
+    // Methods:
+    /**
+     * Play one game to the end.
+     * @return the winner, as Board.winner() gives it.
+     */
+    static char playGame(Level comp, Level user, boolean isCompStarted,
+                         Random rand) {
+        return playGame(new Board(isCompStarted, comp, rand), comp, user);
+    }
+    /**
+     * Play one game to the end on a board, clearing it first.
+     * @return the winner, as Board.winner() gives it.
+     */
+    static char playGame(Board board, Level comp, Level user) {
+        board.reset();
+        char winner = 'P';
+        while (winner == 'P') {
+            if (board.getIsCompTurn())
+                board.makeMove(board.move(comp), 'X');
+            else
+                board.makeMove(board.move(user), 'O');
+            winner = board.winner();
+        }
+        if (EngineMetrics.ENABLED) EngineMetrics.recordResult(comp, winner);
+        return winner;
+    }
+    /**
+     * Play a match over every thread.
+     * @return the first level's wins, draws and losses.
+     */
+    long[] match(Level first, Level second, long games, long seed) {
+        Future<?>[] parts = new Future<?>[threads];
+        long[][] results = new long[threads][3];
+        for (int t = 0; t < threads; t++) {
+            long[] result = results[t];
+            long share = games/threads + (t < games % threads ? 1 : 0);
+            Random rand = new Random(seed * 31 + t);
+            parts[t] = pool.submit(() -> {
+                Board compFirst = new Board(true, first, rand);
+                Board userFirst = new Board(false, first, rand);
+                GameLogWriter log = GameLogWriter.shared();
+                for (long g = 0; g < share; g++) {
+                    Board board = (g & 1) == 0 ? compFirst : userFirst;
+                    char winner = playGame(board, first, second);
+                    result[winner == 'X' ? WINS
+                         : winner == 'O' ? LOSSES : DRAWS]++;
+                    if (log != null) log.write(board, second);
+                }
+                return null;
+            });
+        }
+        long[] total = new long[3];
+        for (int t = 0; t < threads; t++) {
+            try {
+                parts[t].get();
+            } catch (Exception exc) {
+                throw new IllegalStateException("Match failed", exc);
+            }
+            for (int i = 0; i < 3; i++) total[i] += results[t][i];
+        }
+        return total;
+    }
+    /** Stop the threads. */
+    void shutdown() { pool.shutdown(); }
+    /**
+     * Play every level against every other and print the tables.
+     * Arguments: [games per pair] [threads] [seed], or
+     * first-level second-level [games] [threads] [seed] for one match.
+     */
+    public static void main(String[] args) {
+        int at = 0;
+        Level[] firsts = Level.values(), seconds = Level.values();
+        if (args.length >= 2 && !Character.isDigit(args[0].charAt(0))) {
+            firsts = new Level[] { Level.valueOf(args[0].toUpperCase()) };
+            seconds = new Level[] { Level.valueOf(args[1].toUpperCase()) };
+            at = 2;
+        }
+        long games = args.length > at ? Long.parseLong(args[at]) : 1000000;
+        int threads = args.length > at+1 ? Integer.parseInt(args[at+1])
+                    : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > at+2 ? Long.parseLong(args[at+2]) : 2013;
+        Simulator simulator = new Simulator(threads);
+        System.out.println("X\tO\twins\tdraws\tlosses\tgames/s");
+        for (Level first : firsts)
+            for (Level second : seconds) {
+                long start = System.nanoTime();
+                long[] result = simulator.match(first, second, games, seed);
+                double elapsed = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%s\t%s\t%.4f\t%.4f\t%.4f\t%.0f%n",
+                    first, second, result[WINS] / (double) games,
+                    result[DRAWS] / (double) games,
+                    result[LOSSES] / (double) games, games / elapsed);
+            }
+        if (MoveProfiler.ENABLED)
+            System.out.println("\n"+MoveProfiler.report());
+        if (EngineMetrics.ENABLED)
+            System.out.println("\n"+EngineMetrics.report());
+        simulator.shutdown();
+    }
+}
@@ -1,532 +1,849 @@
-
-
-/**
- * @author Rohan
- * 
- * A tic-tac-toe classic CPU vs. Human game.
- * Four levels: Easy, Medium, Hard, and Wizard.
- * 
- * Easy chooses randomly.
- * Medium is the average human.
- * Hard is a little trickier and uses one type of trap.
- * Wizard is undefeatable and uses psychological tactics
- * to make strategies hard to figure. It uses all three types of traps.
- */
-
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.InputMismatchException;
-import java.util.Random;
-import java.util.Scanner;
-
-/**
- * Utility is an all-static uninstantiable class.
- * It contains static methods used throughout the application
- * dealing with arrays.
- */
-class Utility {
-    /** Private constructor prevents instantiablity. */
-    private Utility() {}
-    /** Is pair in array? */
-    static boolean isIn(Pair[] array, Pair pair) {
-        for (Pair p: array) if (p == pair) return true;
-        return false;
-    }
-    /**
-     * @return the set intersection of two arrays.
-     * @param array1 is a Pair[]
-     * @param array2 is a Pair[]
-     */
-    static Pair[] intersection(Pair[] array1, Pair[] array2) {
-        // Create an ArrayList
-        ArrayList<Pair> arrax = new ArrayList<>();
-        for (Pair p : array1) // For every Pair in the array
-            if (isIn(array2, p)) // if its in the second array
-                arrax.add(p); // Add it to the ArrayList
-        Pair[] newArray = new Pair[1];
-        arrax.toArray(newArray);
-        return newArray;           
-    }
-    /**
-     *
-     * @return the set intersection of two arrays.
-     * @param array1 is a Pair[]
-     * @param array2 is an ArrayList<Pair>
-     */
-    static Pair[] intersection(Pair[] array1, ArrayList<Pair> array2) {
-        ArrayList<Pair> arrax = new ArrayList<>(); // Create an ArrayList
-        for (Pair p : array1) // For every Pair in the array
-            if (array2.contains(p)) // if its in the second array
-                arrax.add(p); // Add it to the ArrayList
-        Pair[] newArray = new Pair[1];
-        arrax.toArray(newArray);
-        return newArray;           
-    }
-}
-/**
- * A class representing a pair of coordinates.
- * Coordinates used for tic-tac-toe positions.
- */
-class Pair {
-    // Static fields:
-    /** 
-     * All the pairs, pre-instantiated. 
-     * References are made of Pairs contained in the array of arrays. 
-     */
-    private static final Pair[][] gridPairs = {
-        { new Pair(-1, -1), new Pair(-1, 0), new Pair(-1, 1) },
-        { new Pair(0, -1), new Pair(0, 0), new Pair(0, 1) },
-        { new Pair(1, -1), new Pair(1, 0), new Pair(1, 1) }
-    }; // The pairs, preinstantiated, of which references are of
-    // Fields:
-    /** x-coordinate. */
-    private final int x;
-    /** y-coordinate. */
-    private final int y;
-    /** Constructor for Pair, private to prevent outside instantiation. */
-    private Pair(int x, int y) { this.x = x;   this.y = y; }
-    // Accessors:
-    /** Accessor for x. */
-    int getX() { return x; }
-    /** Accessor for y. */
-    int getY() { return y; }
-    // Mutation returners:
-    /** Return opposite pair. */
-    Pair opposite() { return getPair(-x, -y); }
-    /** Reflect pair over y-axis. */
-    Pair revertX() { return getPair(-x, y); }
-    /** Reflect pair over x-axis. */
-    Pair revertY() { return getPair(x, -y); }
-//    /** Shift pair by other pair. */
-//    Pair shift(Pair other) { return getPair(x+other.x, y+other.y); }
-//    /** Shift by coordinates of other pair. */
-//    Pair shift(int x, int y) { return getPair(this.x+x, this.y+y); }
-    /** 
-     * Static Pair-reference-getter method.
-     * Get pair from a certain position.
-     * @param x the x-coordinate of the pair.
-     * @param y the y-coordinate of the pair.
-     */
-    static Pair getPair(int x, int y) { return gridPairs[x+1][y+1]; }
-}
-/** This enumeration represents the different groups a space can belong to. */
-enum SpaceGroup { CENTER, SIDE, CORNER }
-/** 
- * A space on the tic-tac-toe game board. 
- * A Space not only has a position (Pair), it has a representation
- * which is a character. This is always 'X', 'O', or ' ' (blank).
- * That is the only field that isn't final.
- */
-class Space {
-    // Fields:
-    /** Location of space. */
-    private final Pair loc;
-    /** Character for piece. */
-    private char repr = ' ';
-    /** Group piece is in. */
-    private final SpaceGroup spaceGroup;
-    /** Constructor given two coordinates, setting fields. */
-    Space(int x, int y) {
-        this.loc = Pair.getPair(x,y); // Set Pair loc field (location)
-        if (loc == Board.center) // If its the center
-            spaceGroup = SpaceGroup.CENTER; // Set its type
-        else if (Utility.isIn(Board.corners, loc))
-            // if the location is at the corner
-            spaceGroup = SpaceGroup.CORNER; // set type to corner
-        else // Or else, set the type to 
-            spaceGroup = SpaceGroup.SIDE; // side
-    }
-    // Accessors:
-    /** @return location of Space. */
-    Pair getLoc() { return loc; }
-    /** @return character at Space. */
-    char getRepr() { return repr; }
-    /** @return group space belongs to. */
-    SpaceGroup getGroup() { return spaceGroup; }
-    // Mutator:
-    /** Set character at space. */
-    void setRepr(char repl) { repr = repl; }
-}
-/** An enumeration describing the levels of the game. */
-enum Level { EASY, MEDIUM, HARD, WIZARD }
-/**
- * A class representing the board, which must be instantiated in order
- * to play the game.
- * Most game methods go here.
- * 
- * Class designed to be independent of implementation of game.
- * Computer is always 'X', user is always 'O'.
- */
-class Board {
-    // Static fields:
-    /** Random object used to determine a random choice of move. */
-    private static final Random rand = new Random();
-    /** The array of the pairs which are corners. */
-    static final Pair[] corners = {
-        Pair.getPair(1,1), Pair.getPair(-1,1), 
-        Pair.getPair(1,-1), Pair.getPair(-1,-1)
-    };
-    /** The array of the pairs which are sides. */
-    static final Pair[] sides = {
-        Pair.getPair(0,1), Pair.getPair(0,-1), 
-        Pair.getPair(1,0), Pair.getPair(-1,0)
-    };
-    /** A named constant, the center. */
-    static final Pair center = Pair.getPair(0,0);
-    /** An array of all the triplets of pairs which are a win. */
-    private static final Pair[][] winGroups = {
-        { Pair.getPair(-1,1), Pair.getPair(0,1), Pair.getPair(1,1) },
-        { Pair.getPair(-1,0), Pair.getPair(0,0), Pair.getPair(1,0) },
-        { Pair.getPair(-1,-1), Pair.getPair(0,-1), Pair.getPair(1,-1) },
-        { Pair.getPair(-1,-1), Pair.getPair(-1,0), Pair.getPair(-1,1) },
-        { Pair.getPair(0,-1), Pair.getPair(0,0), Pair.getPair(0,1) },
-        { Pair.getPair(1,-1), Pair.getPair(1,0), Pair.getPair(1,1) },
-        { Pair.getPair(-1,-1), Pair.getPair(0,0), Pair.getPair(1,1) },
-        { Pair.getPair(-1,1), Pair.getPair(0,0), Pair.getPair(1,-1) },
-    };
-    // Fields:
-    /** The board itself, made of Space objects rather than Pairs. */
-    private final Space[][] board = {
-        { new Space(-1, -1), new Space(-1, 0), new Space(-1, 1) },
-        { new Space(0, -1), new Space(0, 0), new Space(0, 1) },
-        { new Space(1, -1), new Space(1, 0), new Space(1, 1)},
-    };
-    /** A move sequence of both the user's and computer's moves. 
-     * They are array lists because it is dynamic. */
-    private ArrayList<Space> UserSeq = new ArrayList<>();
-    private ArrayList<Space> CompSeq = new ArrayList<>();
-    /** The unfixed ArrayList of all the open spaces, which are Pairs. 
-     This is an ArrayList because it is dynamic. */
-    private ArrayList<Pair> openSpaces = new ArrayList<>();
-    /** The number of turns so far. */
-    private int countOfTurns = 1;
-    // // countOfTurns starts at 1
-    /** Tells whether it is the computer's turn. */
-    private boolean isCompTurn;
-    /** Tells whether the computer started. */
-    private final boolean isCompStarted;
-    /** A level object, which tells which level is being played. */
-    private Level level;
-    /** Constructor given level and starter. */
-    Board(boolean isCompStarted, Level level) {
-        this.isCompTurn = isCompStarted;
-        this.isCompStarted = isCompStarted;
-        this.level = level;
-        Pair[] arrax = {
-            Pair.getPair(-1,-1), Pair.getPair(-1,0), Pair.getPair(-1,1),
-            Pair.getPair(0,-1), Pair.getPair(0,0), Pair.getPair(0,1),
-            Pair.getPair(1,-1), Pair.getPair(1,0), Pair.getPair(1,1)
-        };
-        openSpaces.addAll(Arrays.asList(arrax));
-    }
-    // Accessors:
-    /** @return level of board. */
-    Level getLevel() { return level; }
-    /** @return if the computer started. */
-    boolean getIsCompStarted() { return isCompStarted; }
-    // Methods:
-    /** Printable version of board. */
-    @Override public String toString() {
-        return (
-          "\n\t\t "+refer(-1,1)+" | "+refer(0,1)+" | "+refer(1,1)
-          +"\n\t\t-----------"
-          +"\n\t\t "+refer(-1,0)+" | "+refer(0,0)+" | "+refer(1,0)
-          +"\n\t\t-----------"
-          +"\n\t\t "+refer(-1,-1)+" | "+refer(0,-1)+" | "+refer(1,-1)
-        );
-    }
-    /** Get an 'X' or 'O' character given coordinate pair. */
-    private char refer(Pair pair) {
-        return getSpace(pair).getRepr();
-    }
-    /** Get an 'X' and 'O' from coordinates. */
-    private char refer(int x, int y) {
-        return board[x+1][y+1].getRepr();
-    }
-    /** Activate procedures when a move is made. */
-    void makeMove(Pair moveLoc, char XO) {
-        ///* 
-        if (isCompTurn)
-            UserSeq.add(getSpace(moveLoc));
-        else
-            CompSeq.add(getSpace(moveLoc));
-        //*/
-        isCompTurn = !isCompTurn;
-        getSpace(moveLoc).setRepr(XO);
-        openSpaces.remove(moveLoc);
-        countOfTurns++;
-    }
-    /** Get a space reference from a pair. */
-    Space getSpace(Pair pair) {
-        return board[pair.getX()+1][pair.getY()+1];
-    }
-    /** 
-     * Check if anyone is one step from winning.
-     * @return The move to block or to win. 
-     * @return null is returned if there is nothing to block.
-     */
-    private Pair almost() {
-        // First, look at CPU's winnability
-        for (Pair[] group : winGroups) {
-            if (refer(group[0])==refer(group[1]) &&
-                refer(group[0])=='X' && 
-                openSpaces.contains(group[2]))
-                    // If 0 and 1 are filled
-                return group[2]; // make sure to block 2
-            if (refer(group[0])==refer(group[2]) &&
-                refer(group[0])=='X' && 
-                openSpaces.contains(group[1]))
-                // If 0 and 2 are filled
-                return group[1]; // make sure to block 1 
-            if (refer(group[1])==refer(group[2]) &&
-                refer(group[1])=='X' && 
-                openSpaces.contains(group[0]))
-                // If 1 and 2 are filled
-                return group[0]; // make sure to block 0
-        }
-        // Then look at user's winnability
-        for (Pair[] group : winGroups) {
-            if (refer(group[0])==refer(group[1]) &&
-                refer(group[0])=='O' && 
-                openSpaces.contains(group[2]))
-                    // If 0 and 1 are filled
-               return group[2]; // make sure to block 2
-            if (refer(group[0])==refer(group[2]) &&
-                refer(group[0])=='O' && 
-                openSpaces.contains(group[1]))
-                // If 0 and 2 are filled
-                return group[1]; // make sure to block 1 
-            if (refer(group[1])==refer(group[2]) &&
-                refer(group[1])=='O' && 
-                openSpaces.contains(group[0]))
-                // If 1 and 2 are filled
-                return group[0]; // make sure to block 0
-        }
-        return null; // Otherwise, return null (don't try to block anything)
-    }
-    /** 
-     * Checks if either comp or user has two in a row.
-     * If either does, @return Pair that move.
-     * Otherwise, it just returns the inputted pair.
-     * 
-     * Essentially, its like a safety check for the inputted move.
-     */
-    private Pair safetyCheck(Pair pair) {
-        // If someone has almost won,
-        if (almost() != null) return almost(); // just return the block
-        return pair; // or, return the intended move
-    }
-    /** Regular move sequence: Center -> Corners -> Sides. */
-    private Pair regSequence() {
-        if (openSpaces.contains(center)) // If center is open
-            return center; // play there
-        // If a corner is open
-        if (Utility.intersection(corners, openSpaces).length != 0)
-            return Utility.intersection(corners, openSpaces)[0]; // play there
-        return levelEasy(); // Or else choose a random move (now at a side)
-    }
-    /** The easy level's move. Easy chooses a random open space. */
-    Pair levelEasy() {
-        // Return random open space   
-        return openSpaces.get(rand.nextInt(openSpaces.size()));
-    }
-    /** 
-     * The medium level's move.
-     * Medium plays like a normal human. Block a three, or play randomly.
-     */
-    Pair levelMedium() { return safetyCheck(levelEasy()); }
-    Pair levelHard() {
-        // The hard level's move
-        // Add code here
-        return levelEasy();
-    }
-    Pair levelWizard() {
-        // Bring it on
-        // Add code here
-        return levelEasy();
-    }
-    /** Is it already a draw? */
-    boolean isFastDraw() {
-        int cancels = 0; // The number of cancelled lines
-        for (Pair[] array : winGroups) { // For ever winGroup
-            char[] line = { refer(array[0]), refer(array[1]),
-                            refer(array[2]) }; // create a line array
-            if (('X'==line[0] || 'X'==line[1] || 'X'==line[2]) && // And if it
-                ('O'==line[0] || 'O'==line[1] || 'O'==line[2])) // is blocked
-                cancels++; // then one more row has been cancelled
-        }
-        return cancels == 8;
-    }
-    /**
-     * @return whatever character of the winner. 
-     * @return 'X' means the comp won. 
-     * @return 'O' means the user won. 
-     * @return 'D' means the game is a draw. 
-     * @return 'P' means the game is still in progress.
-     */
-    char winner() {
-        if (isFastDraw()) return 'D'; // If its a draw, no one won (aka D)
-        for (Pair[] array : winGroups) // Else, check the winGroups
-            if (refer(array[0]) == refer(array[1]) && // If the char in each
-                refer(array[0]) == refer(array[2]) && // position is equal to
-                refer(array[0]) != ' ') // either 'X' or 'O'
-                return refer(array[0]); // return that character
-        return 'P'; // Otherwise the game is still in progress
-    }
-}
-/**
- * Main class.
- * Instantiated in main static method
- * and play method of TicTacToe object called.
- * Program runs from there.
- */
-public class TicTacToe {
-    // Fields:
-    /** The static TicTacToe object that comes in the main class. Its play 
-     * method is called to start the game. */
-    private static TicTacToe ttt = new TicTacToe();
-    /** Each tic-tac-toe object has its own Board. */
-    private Board board;
-    /** Main method. */
-    public static void main(String[] args) {
-        // Program starts here
-        System.out.print(ttt.instructions()); // Print instructions
-        Level level = ttt.gfpLevel(); // Get level
-        boolean isCompFirst = ttt.gfpCompFirstTurn(); // See who goes first
-        ttt.board = new Board(isCompFirst, level); // Set board object
-        ttt.play(); // and play!    
-    }
-    // Tic-Tac-Toe main game methods:
-    /** @return a long string stating the instructions. */
-    private String instructions() {
-        return ("Welcome human, to the greatest intellectual challenge of all "
-                + "time: Tic-Tac-Toe.\nHere, you will challenge and face my "
-                + "silicon processor.\nYou will enter your move as a number "
-                + "from 0 through 8 which will correspond\nto one the following "
-                + "positions:\n\n"
-                + "\t\t 0 | 1 | 2\n"
-                + "\t\t-----------\n"
-                + "\t\t 3 | 4 | 5\n"
-                + "\t\t-----------\n"
-                + "\t\t 6 | 7 | 8\n\n"
-                + "You will be player 'O', I will be 'X.'\n"
-                + "Prepare yourself, human. The worst is yet to come!\n"
-                + "Select which level you would like to play\n"
-                + "\tEasy\n\tMedium\n\tHard\n\tWizard\n"
-               ); // Return instructions String
-    }
-    /** 
-     * Note: method does exception checking.
-     * @return a reference to a level inputted by the user.
-     */
-    private Level gfpLevel() {
-        String level; // Make reference to string
-        while (true) { // Forever, if the user plays dirty
-            System.out.print("Level: "); // Ask for level
-            Scanner scan = new Scanner(System.in); // Make scanner
-            level = scan.next(); // and get input
-            try {// Try to interpret and return it
-                return Level.valueOf(level.toUpperCase());
-            } catch(Exception exc) { // but if its invalid
-                System.err.println("That is invalid input."); // say so
-            }
-        }
-    }
-    /** 
-     * Choice of return value is based on what user inputs.
-     * Method does exception checking.
-     * @return a boolean stating whether the computer should go first.
-     */
-    private boolean gfpCompFirstTurn() {
-        System.out.println("Would you like to go first?"); // Ask for priority
-        System.out.print("Type Y to go first, N to not, "
-                + "or R to choose randomly: "); // Give him choices
-        Scanner scan = new Scanner(System.in); // Make scanner object
-        char input = scan.next().charAt(0); // and get input
-        while (!((input == 'Y')||(input=='N')||(input=='R') ||
-                 (input == 'y')||(input=='n')||(input=='r'))) { // If invalid
-            // Print error message
-            System.err.print("That is invalid input. Please re-enter: ");
-            scan = new Scanner(System.in); // Make new scanner
-            input = scan.next().charAt(0); // and get new input
-        }
-        if (input=='Y' || input == 'y') return false; // If they want to go, let 'em
-        if (input=='N' || input == 'n') return true; // or don't, if they don't want to
-        Random rand = new Random(); // If they want it to be random
-        return rand.nextBoolean(); // return a random choice
-    }
-    /**
-     * Method gets a move from the user. The method does the
-     * exception handling. The move is a numerical coordinate.
-     * The numerical coordinate is then converted to a Pair.
-     * @see TicTacToe.convert
-     * @return an integer representing user's move.
-     */
-    private int gfpMove() {
-        int userMove; // Allocate 32-bits before-hand
-        while (true) // Forever, in case the user plays dirty
-            try {
-                System.out.print("\nEnter your move: "); // Ask for move
-                Scanner scan = new Scanner(System.in); // Make Scanner
-                userMove = scan.nextInt(); // Get input
-                if (userMove < 9 && userMove >= 0) // If its valid
-                    if (board.getSpace(convert(userMove)).getRepr() == ' ')
-                        break; // exit loop
-                // Or else...
-                throw new InputMismatchException(); // Throw new exception
-            } catch (InputMismatchException exc) {
-                // If an exception gets thrown
-                System.err.println("That is invalid input."); // tell the user
-            }
-        return userMove; // Return value
-    }
-    /**
-     * Take user's input on move and apply procedures from there.
-     * @see TicTacToe.gfpMove
-     * @see Board.makeMove
-     */
-    private void takeInput() {
-        int userMove = gfpMove(); // Get user's move
-        board.makeMove(convert(userMove), 'O'); // Procedures
-        System.out.println("\n"+board+"\n"); // Print board
-    }
-    /** Play game! */
-    private void play() {
-        if (!board.getIsCompStarted()) // If the user starts
-            takeInput(); // let him
-        while (board.winner() == 'P') { // While the game is on
-            System.out.println("Now it's my turn..."); // now its comp's turn
-            if (board.getLevel() == Level.EASY) // If the level is easy
-                board.makeMove(board.levelEasy(), 'X'); // play easy
-            else if (board.getLevel() == Level.MEDIUM) // If the level is medium
-                board.makeMove(board.levelMedium(), 'X'); // play medium
-            else if (board.getLevel() == Level.HARD) // If the level is hard
-                board.makeMove(board.levelHard(), 'X'); // play hard
-            else // Or if the level is wizard otherwise
-                board.makeMove(board.levelWizard(), 'X'); // bring it on
-            System.out.println(board);
-            if (board.winner()=='D' || board.winner()=='X' || 
-                    board.winner()=='O') // If someone has won now
-                break; // end game
-            takeInput(); // Now ask for user's input again
-        }
-        if (board.winner() == 'X') // If comp won
-            // Rub it in user's face
-            System.out.println("\nHa, I won! Your puny mind is no match for me!");
-        else if (board.winner() == 'O')// If the impossible - a user victory -
-            // play sore loser
-            System.out.println("No, no! You have won! But I swear I shall "
-                    + "have vengeance!");
-        else // Otherwise, it must be a draw
-            System.out.println("It's a draw. Consider yourself lucky, human.");
-    }
-    /** Static conversion method. Converts numerical coordinate to pair.
-     * @return the corresponding pair reference. */
-    private static Pair convert(int n) {
-        // Convert a numerical (0-8) coordinate
-        // into a pair, and return it
-        int x = (n % 3)-1; // Get x-coordinate
-        int y = 1-((n-x-1)/3); // Get y-coordinate
-        return Pair.getPair(x, y); // and return the Pair
-    }
+
+
+/**
+ * @author Rohan
+ * 
+ * A tic-tac-toe classic CPU vs. Human game.
+ * Four levels: Easy, Medium, Hard, and Wizard.
+ * 
+ * Easy chooses randomly.
+ * Medium is the average human.
+ * Hard is a little trickier and uses one type of trap.
+ * Wizard is undefeatable and uses psychological tactics
+ * to make strategies hard to figure. It uses all three types of traps.
+ */
+
+import java.util.InputMismatchException;
+import java.util.Random;
+import java.util.Scanner;
+
+/**
+ * Utility is an all-static uninstantiable class.
+ * It contains static methods used throughout the application
+ * dealing with arrays and bit masks.
+ */
+class Utility {
+    /** Private constructor prevents instantiablity. */
+    private Utility() {}
+    /**
+     * @return the bit mask with one bit set for every Pair in the array.
+     * @param array is a Pair[]
+     */
+    static int mask(Pair[] array) {
+        int mask = 0; // Start with no bits
+        for (Pair p : array) // For every Pair in the array
+            mask |= p.getBit(); // set its bit
+        return mask;
+    }
+    /**
+     * @return the index of the n-th (counting from 0) set bit of a mask.
+     * @param mask is a bit mask with more than n bits set
+     * @param n is the number of set bits to skip
+     */
+    static int nthSetBit(int mask, int n) {
+        for (int i = 0; i < n; i++) // Skip the first n bits
+            mask &= mask - 1; // by clearing the lowest one
+        return Integer.numberOfTrailingZeros(mask);
+    }
+    /**
+     * @return the index of the n-th (counting from 0) set bit of a long mask.
+     * @param mask is a bit mask with more than n bits set
+     * @param n is the number of set bits to skip
+     */
+    static int nthSetBit(long mask, int n) {
+        for (int i = 0; i < n; i++) // Skip the first n bits
+            mask &= mask - 1; // by clearing the lowest one
+        return Long.numberOfTrailingZeros(mask);
+    }
+}
+/**
+ * A class representing a pair of coordinates.
+ * Coordinates used for tic-tac-toe positions.
+ */
+class Pair {
+    // Static fields:
+    /** 
+     * All the pairs, pre-instantiated. 
+     * References are made of Pairs contained in the array of arrays. 
+     */
+    private static final Pair[][] gridPairs = {
+        { new Pair(-1, -1), new Pair(-1, 0), new Pair(-1, 1) },
+        { new Pair(0, -1), new Pair(0, 0), new Pair(0, 1) },
+        { new Pair(1, -1), new Pair(1, 0), new Pair(1, 1) }
+    }; // The pairs, preinstantiated, of which references are of
+    /** The same pairs, ordered by their numerical (0-8) coordinate. */
+    private static final Pair[] indexPairs = new Pair[9];
+    static {
+        for (Pair[] column : gridPairs)
+            for (Pair p : column)
+                indexPairs[p.index] = p;
+    }
+    // Fields:
+    /** x-coordinate. */
+    private final int x;
+    /** y-coordinate. */
+    private final int y;
+    /** 
+     * Numerical coordinate, 0 through 8, reading the board from the top
+     * left to the bottom right. It is also the Pair's bit in a board mask.
+     */
+    private final int index;
+    /** Constructor for Pair, private to prevent outside instantiation. */
+    private Pair(int x, int y) {
+        this.x = x;   this.y = y;
+        this.index = 3*(1-y) + (x+1);
+    }
+    // Accessors:
+    /** Accessor for x. */
+    int getX() { return x; }
+    /** Accessor for y. */
+    int getY() { return y; }
+    /** Accessor for the numerical coordinate. */
+    int getIndex() { return index; }
+    /** @return the bit of the pair in a board mask. */
+    int getBit() { return 1 << index; }
+    // Mutation returners:
+    /** Return opposite pair. */
+    Pair opposite() { return getPair(-x, -y); }
+    /** Reflect pair over y-axis. */
+    Pair revertX() { return getPair(-x, y); }
+    /** Reflect pair over x-axis. */
+    Pair revertY() { return getPair(x, -y); }
+    /** Reflect pair over the diagonal from bottom left to top right. */
+    Pair transpose() { return getPair(y, x); }
+//    /** Shift pair by other pair. */
+//    Pair shift(Pair other) { return getPair(x+other.x, y+other.y); }
+//    /** Shift by coordinates of other pair. */
+//    Pair shift(int x, int y) { return getPair(this.x+x, this.y+y); }
+    /** 
+     * Static Pair-reference-getter method.
+     * Get pair from a certain position.
+     * @param x the x-coordinate of the pair.
+     * @param y the y-coordinate of the pair.
+     */
+    static Pair getPair(int x, int y) { return gridPairs[x+1][y+1]; }
+    /** 
+     * Get pair from its numerical (0-8) coordinate.
+     * @param n the numerical coordinate (or bit index) of the pair.
+     */
+    static Pair byIndex(int n) { return indexPairs[n]; }
+}
+/**
+ * Wizard is an all-static uninstantiable class.
+ * It holds the table of perfect moves which the wizard level plays from.
+ * 
+ * Positions are seen from the side to move ("mover") and its opponent, so
+ * one table serves both the computer and the user. Every position is
+ * reduced under the 8 symmetries of the board to a canonical one, whose
+ * base-3 key indexes the table. An entry holds the game-theoretic value
+ * and the mask of every optimal move, so a random optimal move costs
+ * no more than a fixed one.
+ */
+class Wizard {
+    /** Private constructor prevents instantiablity. */
+    private Wizard() {}
+    // Static fields:
+    /** Number of base-3 position keys, 3 to the 9th. */
+    private static final int KEYS = 19683;
+    /** Flag marking a table entry as solved. */
+    private static final int SOLVED = 1 << 12;
+    /** 
+     * The 8 symmetries as permutations of numerical coordinates.
+     * Bit 0 of the symmetry reverts x, bit 1 reverts y, bit 2 transposes.
+     */
+    private static final int[][] symmetries = new int[8][9];
+    /** The symmetry undoing each symmetry. */
+    private static final int[] inverses = new int[8];
+    /** Every 9-bit mask transformed by every symmetry. */
+    private static final short[][] symMasks = new short[8][512];
+    /** The base-3 value of every mask, one digit per space. */
+    private static final short[] ternary = new short[512];
+    /** The table itself, filled for canonical positions only. */
+    private static final short[] table = new short[KEYS];
+    /** The number of canonical positions in the table. */
+    private static int size;
+    static {
+        for (int s = 0; s < 8; s++)
+            for (int n = 0; n < 9; n++) {
+                Pair p = Pair.byIndex(n);
+                if ((s & 4) != 0) p = p.transpose();
+                if ((s & 1) != 0) p = p.revertX();
+                if ((s & 2) != 0) p = p.revertY();
+                symmetries[s][n] = p.getIndex();
+            }
+        for (int s = 0; s < 8; s++) // Find every inverse
+            for (int t = 0; t < 8; t++)
+                if (symmetries[t][symmetries[s][0]] == 0 &&
+                    symmetries[t][symmetries[s][1]] == 1 &&
+                    symmetries[t][symmetries[s][3]] == 3)
+                    inverses[s] = t; // three points fix a symmetry
+        for (int mask = 0; mask < 512; mask++) {
+            int digits = 0;
+            for (int n = 8; n >= 0; n--)
+                digits = 3*digits + ((mask >> n) & 1);
+            ternary[mask] = (short) digits;
+            for (int s = 0; s < 8; s++) {
+                int image = 0;
+                for (int n = 0; n < 9; n++)
+                    if ((mask & (1 << n)) != 0)
+                        image |= 1 << symmetries[s][n];
+                symMasks[s][mask] = (short) image;
+            }
+        }
+        solve(0, 0); // Solve every position reachable from the empty board
+    }
+    // Methods:
+    /** @return the key of a position, with the mover's spaces as 1 digits. */
+    static int key(int mover, int opp) {
+        return ternary[mover] + 2*ternary[opp];
+    }
+    /** @return the symmetry taking a position to its canonical form. */
+    private static int canonicalSymmetry(int mover, int opp) {
+        int best = 0, bestKey = key(mover, opp);
+        for (int s = 1; s < 8; s++) {
+            int k = key(symMasks[s][mover], symMasks[s][opp]);
+            if (k < bestKey) { best = s; bestKey = k; }
+        }
+        return best;
+    }
+    /**
+     * Solve a position and all positions after it by negamax.
+     * @return the value for the mover: 1 win, 0 draw, -1 loss.
+     */
+    private static int solve(int mover, int opp) {
+        int s = canonicalSymmetry(mover, opp);
+        mover = symMasks[s][mover];
+        opp = symMasks[s][opp];
+        int k = key(mover, opp);
+        if (table[k] != 0) return ((table[k] >> 9) & 3) - 1; // Already solved
+        int best = -1, bestMoves = 0;
+        int open = ~(mover | opp) & Board.FULL_MASK;
+        if (Board.hasLine(opp)) best = -1; // The opponent just won
+        else if (open == 0) best = 0; // The board is full
+        else
+            for (int moves = open; moves != 0; moves &= moves - 1) {
+                int bit = moves & -moves;
+                int value = -solve(opp, mover | bit);
+                if (value > best || bestMoves == 0) {
+                    best = value; bestMoves = bit;
+                } else if (value == best)
+                    bestMoves |= bit; // Another equally good move
+            }
+        table[k] = (short) (SOLVED | (best+1) << 9 | bestMoves);
+        size++;
+        return best;
+    }
+    /** @return the solved entry of any position, in its canonical frame. */
+    private static int entry(int mover, int opp) {
+        int s = canonicalSymmetry(mover, opp);
+        return table[key(symMasks[s][mover], symMasks[s][opp])];
+    }
+    /** @return the number of canonical positions in the table. */
+    static int size() { return size; }
+    /**
+     * @return if a position was solved: if it can be reached by taking
+     * turns from the empty board, the mover's opponent moving last.
+     */
+    static boolean isSolved(int mover, int opp) {
+        return (entry(mover, opp) & SOLVED) != 0;
+    }
+    /** 
+     * @return the value of a reachable position for the mover:
+     * 1 is a win, 0 a draw and -1 a loss with perfect play.
+     */
+    static int value(int mover, int opp) {
+        return ((entry(mover, opp) >> 9) & 3) - 1;
+    }
+    /** @return the mask of every optimal move in a reachable position. */
+    static int bestMoves(int mover, int opp) {
+        int s = canonicalSymmetry(mover, opp);
+        int moves = table[key(symMasks[s][mover], symMasks[s][opp])] & 0x1FF;
+        return symMasks[inverses[s]][moves]; // Back from the canonical frame
+    }
+    /** 
+     * The psychological move: a random one among the optimal moves.
+     * @return the move, or null if the game is over.
+     */
+    static Pair bestMove(int mover, int opp, Random rand) {
+        int moves = bestMoves(mover, opp);
+        if (moves == 0) return null;
+        int n = rand.nextInt(Integer.bitCount(moves));
+        return Pair.byIndex(Utility.nthSetBit(moves, n));
+    }
+}
+/** An enumeration describing the levels of the game. */
+enum Level { EASY, MEDIUM, HARD, WIZARD }
+/**
+ * A class representing the board, which must be instantiated in order
+ * to play the game.
+ * Most game methods go here.
+ * 
+ * Class designed to be independent of implementation of game.
+ * Computer is always 'X', user is always 'O'.
+ * The levels play for whichever side is to move, so the computer
+ * can also play the user's side against itself.
+ * 
+ * The position is kept as bitboards: one 9-bit mask per side, where bit n
+ * is the space with numerical coordinate n (see Pair.getIndex).
+ */
+class Board {
+    // Static fields:
+    /** The array of the pairs which are corners. */
+    static final Pair[] corners = {
+        Pair.getPair(1,1), Pair.getPair(-1,1), 
+        Pair.getPair(1,-1), Pair.getPair(-1,-1)
+    };
+    /** The array of the pairs which are sides. */
+    static final Pair[] sides = {
+        Pair.getPair(0,1), Pair.getPair(0,-1), 
+        Pair.getPair(1,0), Pair.getPair(-1,0)
+    };
+    /** A named constant, the center. */
+    static final Pair center = Pair.getPair(0,0);
+    /** The mask with every space set. */
+    static final int FULL_MASK = 0x1FF;
+    /** An array of all the triplets of pairs which are a win. */
+    private static final Pair[][] winGroups = {
+        { Pair.getPair(-1,1), Pair.getPair(0,1), Pair.getPair(1,1) },
+        { Pair.getPair(-1,0), Pair.getPair(0,0), Pair.getPair(1,0) },
+        { Pair.getPair(-1,-1), Pair.getPair(0,-1), Pair.getPair(1,-1) },
+        { Pair.getPair(-1,-1), Pair.getPair(-1,0), Pair.getPair(-1,1) },
+        { Pair.getPair(0,-1), Pair.getPair(0,0), Pair.getPair(0,1) },
+        { Pair.getPair(1,-1), Pair.getPair(1,0), Pair.getPair(1,1) },
+        { Pair.getPair(-1,-1), Pair.getPair(0,0), Pair.getPair(1,1) },
+        { Pair.getPair(-1,1), Pair.getPair(0,0), Pair.getPair(1,-1) },
+    };
+    /** The winGroups as masks, in the same order. */
+    static final int[] winMasks = new int[winGroups.length];
+    /** For every mask of one side, whether it holds a line. */
+    private static final boolean[] lineMasks = new boolean[512];
+    /** The plies the hard level looks ahead, unless set otherwise. */
+    static final int HARD_DEPTH = 3;
+    /** The chance the hard level plays at random, unless set otherwise. */
+    static final double HARD_NOISE = 0.1;
+    /** The score of a win found by the hard level's search. */
+    private static final int HARD_WIN = 100;
+    /**
+     * The best moves of finished hard searches, by depth and position key,
+     * 0 where not yet searched, so that most hard moves cost a lookup.
+     * Threads may race to fill an entry; they write the same value.
+     */
+    private static final short[][] hardMemo = new short[10][];
+    static {
+        for (int i = 0; i < winGroups.length; i++)
+            winMasks[i] = Utility.mask(winGroups[i]);
+        for (int mask = 0; mask < 512; mask++)
+            for (int line : winMasks)
+                if ((mask & line) == line) lineMasks[mask] = true;
+    }
+    // Fields:
+    /** The spaces taken by the computer ('X'). */
+    private int compMask;
+    /** The spaces taken by the user ('O'). */
+    private int userMask;
+    /** The spaces taken by anyone. Open spaces are its complement. */
+    private int occupied;
+    /** A move sequence of both the user's and computer's moves,
+     * as numerical coordinates in the order they were played. */
+    private final byte[] moveSeq = new byte[9];
+    /** The number of turns so far. */
+    private int countOfTurns = 1;
+    // // countOfTurns starts at 1
+    /** Tells whether it is the computer's turn. */
+    private boolean isCompTurn;
+    /** Tells whether the computer started. */
+    private final boolean isCompStarted;
+    /** A level object, which tells which level is being played. */
+    private Level level;
+    /** Random object used to determine a random choice of move. */
+    private final Random rand;
+    /** The plies the hard level looks ahead. */
+    private int hardDepth = HARD_DEPTH;
+    /** The chance the hard level plays a random move instead. */
+    private double hardNoise = HARD_NOISE;
+    /** The time a move may take, in milliseconds. */
+    private long moveMillis = 1000;
+    /** The positions a move may search. */
+    private long moveNodes = Long.MAX_VALUE;
+    /** Positions the running hard search may still visit. */
+    private long nodesLeft;
+    /** Time at which the running hard search must stop, in System.nanoTime(). */
+    private long deadline;
+    /** Constructor given level and starter. */
+    Board(boolean isCompStarted, Level level) {
+        this(isCompStarted, level, new Random());
+    }
+    /** 
+     * Constructor given level, starter and the Random to choose moves by,
+     * so that games can be replayed from a seed.
+     */
+    Board(boolean isCompStarted, Level level, Random rand) {
+        this.isCompTurn = isCompStarted;
+        this.isCompStarted = isCompStarted;
+        this.level = level;
+        this.rand = rand;
+    }
+    // Accessors:
+    /** @return level of board. */
+    Level getLevel() { return level; }
+    /** @return if the computer started. */
+    boolean getIsCompStarted() { return isCompStarted; }
+    /** @return if it is the computer's turn. */
+    boolean getIsCompTurn() { return isCompTurn; }
+    /** @return the number of moves played. */
+    int getMoveCount() { return countOfTurns - 1; }
+    /** @return a move played, by its number from 0, as a numerical coordinate. */
+    int getMove(int turn) { return moveSeq[turn]; }
+    /** @return the mask of the open spaces. */
+    int getOpenMask() { return ~occupied & FULL_MASK; }
+    /** @return the mask of the computer's spaces ('X'). */
+    int getCompMask() { return compMask; }
+    /** @return the mask of the user's spaces ('O'). */
+    int getUserMask() { return userMask; }
+    /** @return if the space at the pair is open. */
+    boolean isOpen(Pair pair) { return (occupied & pair.getBit()) == 0; }
+    /** @return the chance the hard level plays a random move instead. */
+    double getHardNoise() { return hardNoise; }
+    /** Set the plies the hard level looks ahead: its strength. */
+    void setHardDepth(int hardDepth) { this.hardDepth = hardDepth; }
+    /** Set the chance the hard level plays a random move instead. */
+    void setHardNoise(double hardNoise) { this.hardNoise = hardNoise; }
+    /**
+     * Set the most a move may take: a time in milliseconds and a number
+     * of positions. Past either, the best move found so far is played.
+     */
+    void setMoveBudget(long moveMillis, long moveNodes) {
+        this.moveMillis = moveMillis;
+        this.moveNodes = moveNodes;
+    }
+    // Methods:
+    /** Clear the board for a new game, with the same starter and level. */
+    void reset() {
+        compMask = userMask = occupied = 0;
+        countOfTurns = 1;
+        isCompTurn = isCompStarted;
+    }
+    /** Printable version of board. */
+    @Override public String toString() {
+        return (
+          "\n\t\t "+refer(-1,1)+" | "+refer(0,1)+" | "+refer(1,1)
+          +"\n\t\t-----------"
+          +"\n\t\t "+refer(-1,0)+" | "+refer(0,0)+" | "+refer(1,0)
+          +"\n\t\t-----------"
+          +"\n\t\t "+refer(-1,-1)+" | "+refer(0,-1)+" | "+refer(1,-1)
+        );
+    }
+    /** Get an 'X' or 'O' character given coordinate pair. */
+    char refer(Pair pair) {
+        int bit = pair.getBit();
+        if ((compMask & bit) != 0) return 'X';
+        if ((userMask & bit) != 0) return 'O';
+        return ' ';
+    }
+    /** Get an 'X' and 'O' from coordinates. */
+    private char refer(int x, int y) {
+        return refer(Pair.getPair(x, y));
+    }
+    /** Activate procedures when a move is made. */
+    void makeMove(Pair moveLoc, char XO) {
+        int bit = moveLoc.getBit();
+        if (XO == 'X')
+            compMask |= bit;
+        else
+            userMask |= bit;
+        occupied |= bit;
+        moveSeq[countOfTurns-1] = (byte) moveLoc.getIndex();
+        isCompTurn = !isCompTurn;
+        countOfTurns++;
+    }
+    /** Take back the last move. */
+    void undoMove() {
+        countOfTurns--;
+        int bit = 1 << moveSeq[countOfTurns-1];
+        compMask &= ~bit;
+        userMask &= ~bit;
+        occupied &= ~bit;
+        isCompTurn = !isCompTurn;
+    }
+    /** 
+     * Find a space which completes a line of a side.
+     * @param own the mask of the side with two in a row.
+     * @return the open space, or null if there is none.
+     */
+    private Pair twoInLine(int own) {
+        int open = getOpenMask();
+        for (int line : winMasks) // For every line
+            if (Integer.bitCount(line & own) == 2 && (line & open) != 0)
+                // If two are filled and the third is open
+                return Pair.byIndex(Integer.numberOfTrailingZeros(line & open));
+        return null;
+    }
+    /** @return the spaces of the side to move. */
+    private int moverMask() { return isCompTurn ? compMask : userMask; }
+    /** @return the spaces of the side not to move. */
+    private int opponentMask() { return isCompTurn ? userMask : compMask; }
+    /** 
+     * Check if anyone is one step from winning.
+     * @return The move to block or to win. 
+     * @return null is returned if there is nothing to block.
+     */
+    private Pair almost() {
+        Pair move = twoInLine(moverMask()); // First, look at own winnability
+        if (move != null) return move;
+        return twoInLine(opponentMask()); // Then look at the other's
+    }
+    /** 
+     * Checks if either comp or user has two in a row.
+     * If either does, @return Pair that move.
+     * Otherwise, it just returns the inputted pair.
+     * 
+     * Essentially, its like a safety check for the inputted move.
+     */
+    private Pair safetyCheck(Pair pair) {
+        Pair block = almost(); // If someone has almost won,
+        if (block != null) return block; // just return the block
+        return pair; // or, return the intended move
+    }
+    /** Regular move sequence: Center -> Corners -> Sides. */
+    private Pair regSequence() {
+        if (isOpen(center)) // If center is open
+            return center; // play there
+        for (Pair corner : corners) // If a corner is open
+            if (isOpen(corner))
+                return corner; // play there
+        return levelEasy(); // Or else choose a random move (now at a side)
+    }
+    /** The easy level's move. Easy chooses a random open space. */
+    Pair levelEasy() {
+        // Return random open space
+        int open = getOpenMask();
+        int n = rand.nextInt(Integer.bitCount(open));
+        return Pair.byIndex(Utility.nthSetBit(open, n));
+    }
+    /** 
+     * The medium level's move.
+     * Medium plays like a normal human. Block a three, or play randomly.
+     */
+    Pair levelMedium() { return safetyCheck(levelEasy()); }
+    /**
+     * The hard level's move.
+     * Hard searches a few plies ahead (see hardMoves) and plays a random
+     * one of the best moves it finds, except that now and then, by
+     * hardNoise, it plays at random. So on this board, where the search
+     * always finishes, each move's chance can be worked out exactly.
+     */
+    Pair levelHard() {
+        if (hardNoise > 0 && rand.nextDouble() < hardNoise) return levelEasy();
+        int moves = hardMoves();
+        int n = rand.nextInt(Integer.bitCount(moves));
+        return Pair.byIndex(Utility.nthSetBit(moves, n));
+    }
+    /**
+     * Search by iterative deepening, one ply deeper each time up to
+     * hardDepth, within the move budget. Every open space is best until
+     * the first iteration finishes, so a move is always ready; an
+     * iteration cut short by the budget is thrown away.
+     * @return the mask of the best moves of the deepest finished iteration.
+     */
+    int hardMoves() {
+        int maxDepth = Math.min(hardDepth, 9);
+        short[] memo = hardMemo[maxDepth];
+        if (memo == null) memo = hardMemo[maxDepth] = new short[19683];
+        int key = Wizard.key(moverMask(), opponentMask());
+        if (memo[key] != 0) return memo[key];
+        int best = getOpenMask();
+        nodesLeft = moveNodes;
+        deadline = System.nanoTime() + moveMillis*1000000;
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            int moves = hardRoot(depth);
+            if (moves == 0) return best; // Out of budget
+            best = moves;
+            if (depth >= Integer.bitCount(getOpenMask())) break; // Searched to the end
+        }
+        memo[key] = (short) best;
+        return best;
+    }
+    /** @return the mask of the best moves at a depth, or 0 if out of budget. */
+    private int hardRoot(int depth) {
+        int mover = moverMask(), opp = opponentMask();
+        int bestValue = Integer.MIN_VALUE, best = 0;
+        for (int moves = getOpenMask(); moves != 0; moves &= moves - 1) {
+            int bit = moves & -moves;
+            int value = -hardValue(opp, mover | bit, depth - 1);
+            if (nodesLeft < 0) return 0;
+            if (value > bestValue) {
+                bestValue = value;
+                best = bit;
+            } else if (value == bestValue)
+                best |= bit; // Another equally good move
+        }
+        return best;
+    }
+    /**
+     * Negamax to a depth, scoring wins, sooner ones higher, and beyond the
+     * depth the lines still open to each side.
+     * @return the value for the mover, or 0 once out of budget.
+     */
+    private int hardValue(int mover, int opp, int depth) {
+        if (--nodesLeft < 0 || (nodesLeft & 63) == 0 && System.nanoTime() > deadline) {
+            nodesLeft = -1;
+            return 0;
+        }
+        if (hasLine(opp)) return -HARD_WIN - depth; // The opponent just won
+        int open = ~(mover | opp) & FULL_MASK;
+        if (open == 0) return 0;
+        if (depth == 0) {
+            int value = 0;
+            for (int line : winMasks) {
+                if ((line & opp) == 0) value += Integer.bitCount(line & mover);
+                if ((line & mover) == 0) value -= Integer.bitCount(line & opp);
+            }
+            return value;
+        }
+        int best = Integer.MIN_VALUE;
+        for (int moves = open; moves != 0; moves &= moves - 1)
+            best = Math.max(best, -hardValue(opp, mover | (moves & -moves), depth - 1));
+        return best;
+    }
+    /** 
+     * The wizard level's move.
+     * Wizard never loses: it plays a random one of the perfect moves.
+     */
+    Pair levelWizard() {
+        return Wizard.bestMove(moverMask(), opponentMask(), rand);
+    }
+    /** 
+     * @return the move of a level, for the side to move.
+     * With MoveProfiler enabled, the move's allocation is accounted;
+     * with EngineMetrics enabled, its time is recorded.
+     */
+    Pair move(Level level) {
+        if (!MoveProfiler.ENABLED && !EngineMetrics.ENABLED) return choose(level);
+        long before = MoveProfiler.ENABLED ? MoveProfiler.start() : 0;
+        long start = System.nanoTime();
+        Pair move = choose(level);
+        if (EngineMetrics.ENABLED) EngineMetrics.recordMove(level, System.nanoTime() - start);
+        if (MoveProfiler.ENABLED) MoveProfiler.end(level, before);
+        return move;
+    }
+    /**
+     * @return the chance of each space (by numerical coordinate) being a
+     * level's move, for the side to move: the odds the level draws its
+     * move by, worked out instead of drawn.
+     */
+    double[] moveChances(Level level) {
+        double[] chances = new double[9];
+        int open = getOpenMask(), moves = open;
+        double random = 0; // The chance of a random open space
+        switch (level) {
+            case EASY:
+                random = 1;
+                moves = 0;
+                break;
+            case MEDIUM:
+                Pair block = almost();
+                if (block == null) random = 1;
+                moves = block == null ? 0 : block.getBit();
+                break;
+            case HARD:
+                if (hardNoise > 0) random = hardNoise;
+                moves = hardMoves();
+                break;
+            default:
+                moves = Wizard.bestMoves(moverMask(), opponentMask());
+        }
+        for (int n = 0; n < 9; n++) {
+            int bit = 1 << n;
+            if ((open & bit) != 0) chances[n] += random / Integer.bitCount(open);
+            if ((moves & bit) != 0) chances[n] += (1 - random) / Integer.bitCount(moves);
+        }
+        return chances;
+    }
+    /** @return the move of a level, for the side to move. */
+    private Pair choose(Level level) {
+        switch (level) {
+            case EASY:   return levelEasy();
+            case MEDIUM: return levelMedium();
+            case HARD:   return levelHard();
+            default:     return levelWizard();
+        }
+    }
+    /** Is it already a draw? */
+    boolean isFastDraw() { return isFastDraw(compMask, userMask); }
+    /** @return if a side's mask holds a line. */
+    static boolean hasLine(int mask) { return lineMasks[mask]; }
+    /** @return if every line holds spaces of both sides. */
+    static boolean isFastDraw(int xMask, int oMask) {
+        for (int line : winMasks) // For every line
+            if ((line & xMask) == 0 || (line & oMask) == 0)
+                return false; // if it isn't blocked, it can still be won
+        return true; // Every line has been cancelled
+    }
+    /**
+     * @return whatever character of the winner. 
+     * @return 'X' means the comp won. 
+     * @return 'O' means the user won. 
+     * @return 'D' means the game is a draw. 
+     * @return 'P' means the game is still in progress.
+     */
+    char winner() {
+        if (isFastDraw()) return 'D'; // If its a draw, no one won (aka D)
+        if (hasLine(compMask)) return 'X'; // Else, check the lines
+        if (hasLine(userMask)) return 'O';
+        return 'P'; // Otherwise the game is still in progress
+    }
+}
+/**
+ * Main class.
+ * Instantiated in main static method
+ * and play method of TicTacToe object called.
+ * Program runs from there.
+ */
+public class TicTacToe {
+    // Fields:
+    /** The static TicTacToe object that comes in the main class. Its play 
+     * method is called to start the game. */
+    private static TicTacToe ttt = new TicTacToe();
+    /** Each tic-tac-toe object has its own Board. */
+    private Board board;
+    /** Main method. Given "analyze" and Analysis's arguments, it analyzes positions instead. */
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equalsIgnoreCase("analyze")) {
+            // No game: analyze positions, as Analysis does
+            Analysis.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        // Program starts here
+        System.out.print(ttt.instructions()); // Print instructions
+        Level level = ttt.gfpLevel(); // Get level
+        boolean isCompFirst = ttt.gfpCompFirstTurn(); // See who goes first
+        ttt.board = new Board(isCompFirst, level); // Set board object
+        ttt.play(); // and play!    
+    }
+    // Tic-Tac-Toe main game methods:
+    /** @return a long string stating the instructions. */
+    private String instructions() {
+        return ("Welcome human, to the greatest intellectual challenge of all "
+                + "time: Tic-Tac-Toe.\nHere, you will challenge and face my "
+                + "silicon processor.\nYou will enter your move as a number "
+                + "from 0 through 8 which will correspond\nto one the following "
+                + "positions:\n\n"
+                + "\t\t 0 | 1 | 2\n"
+                + "\t\t-----------\n"
+                + "\t\t 3 | 4 | 5\n"
+                + "\t\t-----------\n"
+                + "\t\t 6 | 7 | 8\n\n"
+                + "You will be player 'O', I will be 'X.'\n"
+                + "Prepare yourself, human. The worst is yet to come!\n"
+                + "Select which level you would like to play\n"
+                + "\tEasy\n\tMedium\n\tHard\n\tWizard\n"
+               ); // Return instructions String
+    }
+    /** 
+     * Note: method does exception checking.
+     * @return a reference to a level inputted by the user.
+     */
+    private Level gfpLevel() {
+        String level; // Make reference to string
+        while (true) { // Forever, if the user plays dirty
+            System.out.print("Level: "); // Ask for level
+            Scanner scan = new Scanner(System.in); // Make scanner
+            level = scan.next(); // and get input
+            try {// Try to interpret and return it
+                return Level.valueOf(level.toUpperCase());
+            } catch(Exception exc) { // but if its invalid
+                System.err.println("That is invalid input."); // say so
+            }
+        }
+    }
+    /** 
+     * Choice of return value is based on what user inputs.
+     * Method does exception checking.
+     * @return a boolean stating whether the computer should go first.
+     */
+    private boolean gfpCompFirstTurn() {
+        System.out.println("Would you like to go first?"); // Ask for priority
+        System.out.print("Type Y to go first, N to not, "
+                + "or R to choose randomly: "); // Give him choices
+        Scanner scan = new Scanner(System.in); // Make scanner object
+        char input = scan.next().charAt(0); // and get input
+        while (!((input == 'Y')||(input=='N')||(input=='R') ||
+                 (input == 'y')||(input=='n')||(input=='r'))) { // If invalid
+            // Print error message
+            System.err.print("That is invalid input. Please re-enter: ");
+            scan = new Scanner(System.in); // Make new scanner
+            input = scan.next().charAt(0); // and get new input
+        }
+        if (input=='Y' || input == 'y') return false; // If they want to go, let 'em
+        if (input=='N' || input == 'n') return true; // or don't, if they don't want to
+        Random rand = new Random(); // If they want it to be random
+        return rand.nextBoolean(); // return a random choice
+    }
+    /**
+     * Method gets a move from the user. The method does the
+     * exception handling. The move is a numerical coordinate.
+     * The numerical coordinate is then converted to a Pair.
+     * @see TicTacToe.convert
+     * @return an integer representing user's move.
+     */
+    private int gfpMove() {
+        int userMove; // Allocate 32-bits before-hand
+        while (true) // Forever, in case the user plays dirty
+            try {
+                System.out.print("\nEnter your move: "); // Ask for move
+                Scanner scan = new Scanner(System.in); // Make Scanner
+                userMove = scan.nextInt(); // Get input
+                if (userMove < 9 && userMove >= 0) // If its valid
+                    if (board.isOpen(convert(userMove)))
+                        break; // exit loop
+                // Or else...
+                throw new InputMismatchException(); // Throw new exception
+            } catch (InputMismatchException exc) {
+                // If an exception gets thrown
+                System.err.println("That is invalid input."); // tell the user
+            }
+        return userMove; // Return value
+    }
+    /**
+     * Take user's input on move and apply procedures from there.
+     * @see TicTacToe.gfpMove
+     * @see Board.makeMove
+     */
+    private void takeInput() {
+        int userMove = gfpMove(); // Get user's move
+        board.makeMove(convert(userMove), 'O'); // Procedures
+        System.out.println("\n"+board+"\n"); // Print board
+    }
+    /** Play game! */
+    private void play() {
+        if (!board.getIsCompStarted()) // If the user starts
+            takeInput(); // let him
+        char winner = board.winner(); // Look once per move
+        while (winner == 'P') { // While the game is on
+            System.out.println("Now it's my turn..."); // now its comp's turn
+            board.makeMove(board.move(board.getLevel()), 'X'); // play the level
+            System.out.println(board);
+            winner = board.winner();
+            if (winner != 'P') // If someone has won now
+                break; // end game
+            takeInput(); // Now ask for user's input again
+            winner = board.winner();
+        }
+        if (winner == 'X') // If comp won
+            // Rub it in user's face
+            System.out.println("\nHa, I won! Your puny mind is no match for me!");
+        else if (winner == 'O')// If the impossible - a user victory -
+            // play sore loser
+            System.out.println("No, no! You have won! But I swear I shall "
+                    + "have vengeance!");
+        else // Otherwise, it must be a draw
+            System.out.println("It's a draw. Consider yourself lucky, human.");
+    }
+    /** Static conversion method. Converts numerical coordinate to pair.
+     * @return the corresponding pair reference. */
+    private static Pair convert(int n) {
+        // Convert a numerical (0-8) coordinate
+        // into a pair, and return it
+        return Pair.byIndex(n); // and return the Pair
+    }
 }
\ No newline at end of file
@@ -0,0 +1,483 @@
+/**
+ * @author Rohan
+ *
+ * A learned evaluation for boards too big to solve: an n-tuple network,
+ * trained by playing itself.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A class holding an n-tuple network for one shape of board (see
+ * LineTable). Its tuples are the board's lines of k+1, one cell longer
+ * than a win, so that a tuple sees whether a run is open at its ends
+ * (or of k, where no longer line fits). Each tuple's filling is its
+ * code, the base-3 number with a digit per cell: 0 open, 1 the side to
+ * move, 2 the other side. The network's sum is the sum over the tuples
+ * of a weight for each code, and it is added to the board's evaluation
+ * by line counts (see MNKBoard), LINES to 1.0: so a network of zeros
+ * plays just as the line counts do, and the network learns what they
+ * miss. Its value, from -1 to 1, is the tanh of the two. The value is
+ * always for the side to move, which counts: an open run of k-1 is all
+ * but won for the side to move, and no threat to the other.
+ *
+ * Tuples which the board's symmetries (its reflections and rotations,
+ * and its turns around where edges are glued) take onto each other share
+ * one table of 3^(k+1) weights, read in the same order: a tuple on one
+ * side of the board learns from the games played on the other, and
+ * both sides learn the same weights.
+ *
+ * A move changes only the codes of the tuples through its cell, so
+ * MNKBoard keeps the codes, as each side sees them, and the sums up to
+ * date as it plays, the way it keeps its line counts: evaluating a
+ * position in the search is two table lookups per tuple through the
+ * cell played, never a pass over the board. For that the weights are
+ * also kept as ints, SCALE to 1.0.
+ *
+ * train() learns the weights by temporal difference: the network plays
+ * itself, each side choosing the move whose position it values best (or
+ * now and then a random one). The value of every position reached is
+ * moved towards that of the best move from it, and the value of the last
+ * towards the result.
+ *
+ * A network file is an int MAGIC, the shape's name (as writeUTF), the
+ * length of a tuple and the number of tables as ints, then the weights
+ * as floats, table by table, all big-endian: 4 bytes per weight and
+ * nothing else.
+ */
+class TupleNet {
+    // Static fields:
+    /** The first int of every network file: "TTN1". */
+    private static final int MAGIC = 0x54544E31;
+    /** The longest tuple a network is made for: 3^length weights per table. */
+    static final int MAX_LENGTH = 10;
+    /** Powers of 3: the digit of the cell at each place of a tuple. */
+    static final int[] POWERS = new int[MAX_LENGTH + 1];
+    /** The most random moves a game of training starts with. */
+    private static final int OPENING = 4;
+    /** The int weight of a weight of 1.0. */
+    static final int SCALE = 1000;
+    /** The evaluation by line counts (see MNKBoard) which adds 1.0 to the sum. */
+    static final int LINES = 256;
+    /** The network file MNKBoard plays with. */
+    private static final String PATH = System.getProperty("ttt.tupleNet", "tuple.net");
+    /** The network at PATH, once looked for. */
+    private static TupleNet installed;
+    /** Tells whether PATH has been looked for. */
+    private static boolean looked;
+    static {
+        POWERS[0] = 1;
+        for (int i = 1; i < POWERS.length; i++)
+            POWERS[i] = 3 * POWERS[i-1];
+    }
+    // Fields:
+    /** The shape of board. */
+    private final LineTable table;
+    /** The tuples, as lines on the same shape. */
+    private final LineTable tuples;
+    /** The length of a tuple. */
+    private final int length;
+    /** The number of tuples. */
+    private final int tupleTotal;
+    /** The weights per table: 3^length. */
+    private final int states;
+    /** Where each tuple's table starts in the weights. */
+    private final int[] tupleOffsets;
+    /** The place each cell takes in each tuple's code, as in the tuples' getCellLines(). */
+    private final int[] tuplePlaces;
+    /** The weights, table after table, indexed by code. */
+    private final float[] weights;
+    /** The weights as ints, SCALE to 1.0, for the search. */
+    private final int[] values;
+    /** Constructor given the shape, with every weight 0. */
+    TupleNet(LineTable table) {
+        this.table = table;
+        this.tuples = tuplesOf(table);
+        this.length = tuples.getK();
+        if (length > MAX_LENGTH)
+            throw new IllegalArgumentException("Tuples of "+length+" are too long for a network");
+        this.tupleTotal = tuples.getLineTotal();
+        this.states = POWERS[length];
+        this.tupleOffsets = new int[tupleTotal];
+        this.tuplePlaces = tuples.getCellPlaces().clone();
+        int tables = shareTables();
+        this.weights = new float[tables * states];
+        this.values = new int[weights.length];
+    }
+    // Accessors:
+    /** @return the tuples, as lines on the board's shape. */
+    LineTable getTuples() { return tuples; }
+    /** @return where each tuple's table starts. Not to be changed. */
+    int[] getTupleOffsets() { return tupleOffsets; }
+    /** @return the place of each cell in each tuple's code, as in getTuples().getCellLines(). Not to be changed. */
+    int[] getTuplePlaces() { return tuplePlaces; }
+    /** @return the int weights, table after table. Not to be changed. */
+    int[] getValues() { return values; }
+    /** @return if the network is made for the shape of a table. */
+    boolean fits(LineTable table) { return table == this.table; }
+    // Methods:
+    /**
+     * @return the lines a network on a table takes for its tuples: the
+     * lines of k+1, or of k if none so long fits.
+     */
+    static LineTable tuplesOf(LineTable table) {
+        try {
+            return table.withK(table.getK() + 1);
+        } catch (IllegalArgumentException exc) {
+            return table;
+        }
+    }
+    /**
+     * @return the maps of cells which could be symmetries of a shape:
+     * the reflections and rotations of its grid, each with every turn
+     * around glued edges, or the turns and reflections of the star.
+     */
+    private static int[][] candidateMaps(LineTable table) {
+        int m = table.getM(), n = table.getN();
+        if (table.getTopology() == null) { // The star: tips 0-4, crossings 5-9
+            int[][] maps = new int[10][10];
+            for (int turn = 0; turn < 5; turn++)
+                for (int i = 0; i < 5; i++) {
+                    maps[turn][i] = (i + turn) % 5;
+                    maps[turn][5 + i] = 5 + (i + turn) % 5;
+                    maps[5 + turn][i] = (turn - i + 5) % 5;
+                    maps[5 + turn][5 + i] = 5 + (turn - i + 9) % 5;
+                }
+            return maps;
+        }
+        boolean wrapX = table.getTopology() != LineTable.Topology.PLANE;
+        boolean wrapY = table.getTopology() == LineTable.Topology.TORUS
+                     || table.getTopology() == LineTable.Topology.KLEIN;
+        int turnsX = wrapX ? m : 1, turnsY = wrapY ? n : 1;
+        int[][] maps = new int[8 * turnsX * turnsY][];
+        int count = 0;
+        for (int sym = 0; sym < 8; sym++) {
+            boolean transpose = sym >= 4;
+            if (transpose && m != n) continue;
+            for (int dx = 0; dx < turnsX; dx++)
+                for (int dy = 0; dy < turnsY; dy++) {
+                    int[] map = new int[m*n];
+                    for (int cell = 0; cell < m*n; cell++) {
+                        int x = cell % m, y = cell / m;
+                        if ((sym & 1) != 0) x = m - 1 - x;
+                        if ((sym & 2) != 0) y = n - 1 - y;
+                        if (transpose) { int t = x; x = y; y = t; }
+                        map[cell] = (y + dy) % n * m + (x + dx) % m;
+                    }
+                    maps[count++] = map;
+                }
+        }
+        return Arrays.copyOf(maps, count);
+    }
+    /**
+     * Give each tuple the table of the first tuple a symmetry takes onto
+     * it, read forwards or backwards as the symmetry takes it. A map of
+     * cells which takes some tuple off the lines is no symmetry, and is
+     * passed over.
+     * @return the number of tables.
+     */
+    private int shareTables() {
+        int[] cells = tuples.getLineCells();
+        Map<String, Integer> tupleOf = new HashMap<>();
+        for (int tuple = 0; tuple < tupleTotal; tuple++)
+            tupleOf.put(key(cells, tuple * length, length, null), tuple);
+        List<int[]> symmetries = new ArrayList<>();
+        maps:
+        for (int[] map : candidateMaps(table)) {
+            for (int tuple = 0; tuple < tupleTotal; tuple++)
+                if (!tupleOf.containsKey(key(cells, tuple * length, length, map))) continue maps;
+            symmetries.add(map);
+        }
+        Arrays.fill(tupleOffsets, -1);
+        boolean[] isReversed = new boolean[tupleTotal];
+        int tables = 0;
+        for (int tuple = 0; tuple < tupleTotal; tuple++) {
+            if (tupleOffsets[tuple] >= 0) continue;
+            for (int[] map : symmetries) {
+                int image = tupleOf.get(key(cells, tuple * length, length, map));
+                if (tupleOffsets[image] >= 0) continue;
+                boolean isForwards = true, isBackwards = true;
+                for (int p = 0; p < length; p++) {
+                    int cell = cells[image * length + p];
+                    isForwards &= cell == map[cells[tuple * length + p]];
+                    isBackwards &= cell == map[cells[tuple * length + length - 1 - p]];
+                }
+                if (!isForwards && !isBackwards) continue; // Around a ring: not the same order
+                tupleOffsets[image] = tables * states;
+                isReversed[image] = !isForwards;
+            }
+            if (tupleOffsets[tuple] < 0) tupleOffsets[tuple] = tables * states;
+            tables++;
+        }
+        int[] cellTuples = tuples.getCellLines();
+        for (int i = 0; i < tuplePlaces.length; i++)
+            if (isReversed[cellTuples[i]]) tuplePlaces[i] = length - 1 - tuplePlaces[i];
+        return tables;
+    }
+    /** @return the cells of a tuple, through a map if any, as a key. */
+    private static String key(int[] cells, int from, int length, int[] map) {
+        int[] key = new int[length];
+        for (int p = 0; p < length; p++)
+            key[p] = map == null ? cells[from + p] : map[cells[from + p]];
+        Arrays.sort(key);
+        return Arrays.toString(key);
+    }
+    /** Make the int weights from the weights. */
+    private void quantize() {
+        for (int i = 0; i < weights.length; i++)
+            values[i] = Math.round(weights[i] * SCALE);
+    }
+    /** @return the sum of the weights of the tuples' codes. */
+    private double sum(int[] codes) {
+        float sum = 0;
+        for (int tuple = 0; tuple < tupleTotal; tuple++)
+            sum += weights[tupleOffsets[tuple] + codes[tuple]];
+        return sum;
+    }
+    /**
+     * @return the value of a move to the other side, from -1 to 1: the
+     * value the network and the line counts give the position after it,
+     * or -1 if it wins at once. The board is left as it was.
+     * @param codes the codes as the other side sees them.
+     * @param sum the sum of their weights.
+     */
+    private double valueOf(MNKBoard board, int[] codes, double sum, int cell) {
+        board.makeMove(cell);
+        boolean isWin = board.isWinningMove(cell);
+        sum += board.evaluate() / (double) LINES; // The line counts, for the other side
+        board.undoMove();
+        if (isWin) return -1;
+        int[] cellStarts = tuples.getCellStarts(), cellTuples = tuples.getCellLines();
+        for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+            int at = tupleOffsets[cellTuples[i]] + codes[cellTuples[i]];
+            sum += weights[at + 2 * POWERS[tuplePlaces[i]]] - weights[at];
+        }
+        return Math.tanh(sum);
+    }
+    /** Move the value of the tuples' codes, with the line counts' evaluation, towards a target. */
+    private void learn(int[] codes, int lines, double target, double alpha) {
+        double value = Math.tanh(lines / (double) LINES + sum(codes));
+        // The error alone, with no tanh slope: a saturated value still learns
+        float step = (float) (alpha * (target - value));
+        for (int tuple = 0; tuple < tupleTotal; tuple++)
+            weights[tupleOffsets[tuple] + codes[tuple]] += step;
+    }
+    /**
+     * Learn from games of self-play.
+     * @param alpha the learning rate, shared out over the tuples.
+     * @param epsilon the chance of a random move.
+     * @return the share of the games 'X' won.
+     */
+    double train(LineTable table, int games, double alpha, double epsilon, Random rand) {
+        if (!fits(table)) throw new IllegalArgumentException("Not a network for "+table);
+        int[] cellStarts = tuples.getCellStarts(), cellTuples = tuples.getCellLines();
+        // The codes as 'X' sees them and as 'O' does, and as the mover saw them
+        int[][] codes = new int[2][tupleTotal];
+        int[] before = new int[tupleTotal];
+        int beforeLines = 0;
+        double rate = alpha / tupleTotal;
+        int xWins = 0;
+        for (int game = 0; game < games; game++) {
+            MNKBoard board = new MNKBoard(table, true, Level.EASY);
+            board.setNet(null); // The codes are kept here, in step with the weights
+            Arrays.fill(codes[0], 0);
+            Arrays.fill(codes[1], 0);
+            int opening = rand.nextInt(OPENING + 1); // Random moves to start with
+            while (true) {
+                int side = board.getIsCompTurn() ? 0 : 1, other = 1 - side;
+                // The move worst for the other side; ties at random
+                double sum = sum(codes[other]), best = 0;
+                int cell = -1, ties = 0;
+                for (int c = 0; c < board.size(); c++) {
+                    if (!board.isOpen(c)) continue;
+                    double value = valueOf(board, codes[other], sum, c);
+                    if (cell < 0 || value < best) {
+                        cell = c;
+                        best = value;
+                        ties = 1;
+                    } else if (value == best && rand.nextInt(++ties) == 0) {
+                        cell = c;
+                    }
+                }
+                // Learnt from the best move, even when a random one is played
+                if (board.getPlies() > 0) learn(before, beforeLines, -best, rate);
+                if (board.getPlies() < opening || rand.nextDouble() < epsilon)
+                    cell = board.levelEasy();
+                for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+                    codes[side][cellTuples[i]] += POWERS[tuplePlaces[i]];
+                    codes[other][cellTuples[i]] += 2 * POWERS[tuplePlaces[i]];
+                }
+                board.makeMove(cell);
+                char winner = board.winner();
+                if (winner != 'P') {
+                    learn(codes[other], board.evaluate(), winner == 'D' ? 0 : -1, rate);
+                    if (winner == 'X') xWins++;
+                    break;
+                }
+                System.arraycopy(codes[other], 0, before, 0, tupleTotal);
+                beforeLines = board.evaluate();
+            }
+        }
+        quantize();
+        return xWins / (double) games;
+    }
+    /** Write the network to a file. */
+    void save(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeUTF(table.getName());
+            out.writeInt(length);
+            out.writeInt(weights.length / states);
+            for (float weight : weights)
+                out.writeFloat(weight);
+        }
+    }
+    /** @return the network of a file. */
+    static TupleNet load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a tuple network: "+file);
+            TupleNet net;
+            try {
+                net = new TupleNet(LineTable.named(in.readUTF()));
+            } catch (IllegalArgumentException exc) {
+                throw new IOException("Corrupt tuple network: "+file+": "+exc.getMessage());
+            }
+            if (in.readInt() != net.length || in.readInt() != net.weights.length / net.states)
+                throw new IOException("Corrupt tuple network: "+file);
+            byte[] bytes = new byte[4 * net.weights.length];
+            try {
+                in.readFully(bytes);
+            } catch (EOFException exc) {
+                throw new IOException("Truncated tuple network: "+file);
+            }
+            ByteBuffer.wrap(bytes).asFloatBuffer().get(net.weights);
+            net.quantize();
+            return net;
+        }
+    }
+    /**
+     * @return the network at the path of the property ttt.tupleNet
+     * (tuple.net by default), or null if there is none.
+     */
+    static synchronized TupleNet installed() {
+        if (!looked) {
+            looked = true;
+            Path file = Paths.get(PATH);
+            if (Files.exists(file)) {
+                try {
+                    installed = load(file);
+                } catch (IOException exc) {
+                    System.err.println("Tuple network "+file+": "+exc.getMessage());
+                }
+            }
+        }
+        return installed;
+    }
+    /**
+     * @return the share of the games the hard level, searching with a
+     * network, scored against the hard level searching with the line
+     * counts: a win 1, a draw a half. Each game starts from a few random
+     * moves, and each opening is played twice, either side starting.
+     */
+    static double match(TupleNet net, LineTable table, int games, int depth, Random rand) {
+        double points = 0;
+        int[] opening = new int[Math.min(4, table.size() / 2)];
+        // One search for each side, kept from game to game
+        Searcher netSearch = new Searcher(20), lineSearch = new Searcher(20);
+        for (int game = 0; game < games; game++) {
+            boolean netIsX = game % 2 == 0;
+            MNKBoard withNet = new MNKBoard(table, true, Level.HARD);
+            MNKBoard without = new MNKBoard(table, true, Level.HARD);
+            withNet.setNet(net);
+            without.setNet(null);
+            withNet.setSearcher(netSearch);
+            without.setSearcher(lineSearch);
+            for (MNKBoard board : new MNKBoard[] { withNet, without }) {
+                board.setHardDepth(depth);
+                board.setHardNoise(0);
+            }
+            for (int i = 0; i < opening.length; i++) {
+                if (game % 2 == 0) opening[i] = withNet.levelEasy(); // Else as before
+                withNet.makeMove(opening[i]);
+                without.makeMove(opening[i]);
+            }
+            while (withNet.winner() == 'P') {
+                MNKBoard player = withNet.getIsCompTurn() == netIsX ? withNet : without;
+                int cell = player.move(Level.HARD);
+                withNet.makeMove(cell);
+                without.makeMove(cell);
+            }
+            char winner = withNet.winner();
+            points += winner == 'D' ? 0.5 : (winner == 'X') == netIsX ? 1 : 0;
+        }
+        return points / games;
+    }
+    /**
+     * Train a network or try one.
+     * Arguments: train [file] [m] [n] [k] [games] [seed]
+     *        or: play [file] [m] [n] [k] [games] [depth].
+     */
+    public static void main(String[] args) throws IOException {
+        String command = args.length > 0 ? args[0] : "play";
+        Path file = Paths.get(args.length > 1 ? args[1] : PATH);
+        int m = args.length > 2 ? Integer.parseInt(args[2]) : 7;
+        int n = args.length > 3 ? Integer.parseInt(args[3]) : 7;
+        int k = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+        LineTable table = LineTable.grid(m, n, k);
+        if (command.equals("train")) {
+            int games = args.length > 5 ? Integer.parseInt(args[5]) : 30000;
+            long seed = args.length > 6 ? Long.parseLong(args[6]) : 2013;
+            TupleNet net = Files.exists(file) ? load(file) : new TupleNet(table);
+            Random rand = new Random(seed);
+            System.out.println("games\tX won\tgames/s");
+            for (int done = 0; done < games; ) {
+                int batch = Math.min(games - done, Math.max(1, games / 10));
+                long start = System.nanoTime();
+                double xWon = net.train(table, batch, 0.1, 0.1, rand);
+                done += batch;
+                System.out.printf("%d\t%.3f\t%.0f%n", done, xWon,
+                                  batch / ((System.nanoTime() - start) / 1e9));
+            }
+            net.save(file);
+            System.out.printf("%s: %d bytes%n", file, Files.size(file));
+            return;
+        }
+        TupleNet net = load(file);
+        if (!net.fits(table)) throw new IOException("Not a network for "+table+": "+file);
+        int games = args.length > 5 ? Integer.parseInt(args[5]) : 200;
+        int depth = args.length > 6 ? Integer.parseInt(args[6]) : 3;
+        // The search's speed with each evaluation, from the empty board
+        System.out.println("evaluation\tnodes/s");
+        for (TupleNet used : new TupleNet[] { null, net }) {
+            MNKBoard board = new MNKBoard(table, true, Level.WIZARD);
+            board.setNet(used);
+            Searcher searcher = new Searcher(20);
+            searcher.search(board, 5, 60000); // Warm up
+            long start = System.nanoTime();
+            searcher.search(board, 5, 60000);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%s\t%.0f%n", used == null ? "line counts" : "network",
+                              searcher.getNodes() / seconds);
+        }
+        System.out.println("depth\tscore against line counts");
+        for (int d = 1; d <= depth; d++)
+            System.out.printf("%d\t%.3f%n", d, match(net, table, games, d, new Random(2013)));
+    }
+}
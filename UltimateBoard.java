@@ -0,0 +1,246 @@
+/**
+ * @author Rohan
+ *
+ * Ultimate (nine-board) tic-tac-toe: a 3x3 board of 3x3 boards.
+ * Playing a space sends the opponent to the small board in the same
+ * place; a player sent to a closed board may play in any open one.
+ * Winning a small board takes its space on the big board, and three
+ * small boards in a row win the game.
+ */
+
+import java.util.Random;
+
+/**
+ * A class representing an ultimate tic-tac-toe board.
+ * Each small board, and the big one, is a pair of 9-bit masks like
+ * Board's, and the same win logic (Board.hasLine) decides them all.
+ * A move is a number from 0 to 80: nine times the small board's
+ * numerical coordinate, plus the space's.
+ *
+ * Computer is always 'X', user is always 'O'.
+ */
+class UltimateBoard {
+    // Static fields:
+    /** The value of next when the player may choose any small board. */
+    static final int ANY = -1;
+    // Fields:
+    /** The computer's spaces on each small board. */
+    private final int[] compMasks = new int[9];
+    /** The user's spaces on each small board. */
+    private final int[] userMasks = new int[9];
+    /** The small boards the computer has won. */
+    private int metaComp;
+    /** The small boards the user has won. */
+    private int metaUser;
+    /** The small boards which are won or full. */
+    private int closed;
+    /** The small board to play in, or ANY. */
+    private int next = ANY;
+    /** The moves played, in order. */
+    private final int[] moveSeq = new int[81];
+    /** The number of moves played. */
+    private int plies;
+    /** The winner so far, as winner() gives it. */
+    private char winner = 'P';
+    /** Tells whether it is the computer's turn. */
+    private boolean isCompTurn;
+    /** Tells whether the computer started. */
+    private final boolean isCompStarted;
+    /** A level object, which tells which level is being played. */
+    private final Level level;
+    /** Random object used to determine a random choice of move. */
+    private final Random rand;
+    /** The tree search of the harder levels, made when first needed. */
+    private UltimateSearch search;
+    /** The time the wizard level may think, in milliseconds. */
+    private long moveMillis = 1000;
+    /** Constructor given level and starter. */
+    UltimateBoard(boolean isCompStarted, Level level) {
+        this(isCompStarted, level, new Random());
+    }
+    /** Constructor given level, starter and the Random to choose moves by. */
+    UltimateBoard(boolean isCompStarted, Level level, Random rand) {
+        this.isCompStarted = isCompStarted;
+        this.isCompTurn = isCompStarted;
+        this.level = level;
+        this.rand = rand;
+    }
+    // Accessors:
+    /** @return level of board. */
+    Level getLevel() { return level; }
+    /** @return if the computer started. */
+    boolean getIsCompStarted() { return isCompStarted; }
+    /** @return if it is the computer's turn. */
+    boolean getIsCompTurn() { return isCompTurn; }
+    /** @return the number of moves played. */
+    int getPlies() { return plies; }
+    /** @return a move played, by its number from 0. */
+    int getMove(int ply) { return moveSeq[ply]; }
+    /** @return the small board to play in, or ANY. */
+    int getNext() { return next; }
+    /**
+     * @return whatever character of the winner.
+     * @return 'X' means the comp won.
+     * @return 'O' means the user won.
+     * @return 'D' means the game is a draw.
+     * @return 'P' means the game is still in progress.
+     */
+    char winner() { return winner; }
+    /** Set the time the wizard level may think for, in milliseconds. */
+    void setMoveMillis(long moveMillis) { this.moveMillis = moveMillis; }
+    // Methods:
+    /** Become a copy of another board's position, without allocating. */
+    void copyFrom(UltimateBoard other) {
+        System.arraycopy(other.compMasks, 0, compMasks, 0, 9);
+        System.arraycopy(other.userMasks, 0, userMasks, 0, 9);
+        System.arraycopy(other.moveSeq, 0, moveSeq, 0, other.plies);
+        metaComp = other.metaComp;
+        metaUser = other.metaUser;
+        closed = other.closed;
+        next = other.next;
+        plies = other.plies;
+        winner = other.winner;
+        isCompTurn = other.isCompTurn;
+    }
+    /** Get an 'X', 'O' or ' ' for a move's space. */
+    char refer(int move) {
+        int sub = move / 9, bit = 1 << (move % 9);
+        if ((compMasks[sub] & bit) != 0) return 'X';
+        if ((userMasks[sub] & bit) != 0) return 'O';
+        return ' ';
+    }
+    /** Printable version of board. Rows of small boards, like Board's. */
+    @Override public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int row = 0; row < 9; row++) {
+            if (row > 0 && row % 3 == 0)
+                sb.append("\n\t\t-----------+-----------+-----------");
+            sb.append("\n\t\t");
+            for (int col = 0; col < 9; col++) {
+                int move = 9*(3*(row/3) + col/3) + 3*(row%3) + col%3;
+                if (col > 0) sb.append(col % 3 == 0 ? " | " : " ");
+                sb.append(' ').append(refer(move)).append(' ');
+            }
+        }
+        return sb.toString();
+    }
+    /** @return the open spaces of a small board. */
+    private int openMask(int sub) {
+        return ~(compMasks[sub] | userMasks[sub]) & Board.FULL_MASK;
+    }
+    /** @return if a move may be played now. */
+    boolean isLegal(int move) {
+        if (move < 0 || move >= 81 || winner != 'P') return false;
+        int sub = move / 9;
+        return (next == ANY ? (closed & (1 << sub)) == 0 : sub == next)
+            && (openMask(sub) & (1 << (move % 9))) != 0;
+    }
+    /**
+     * Write every legal move into an array.
+     * @return the number of moves.
+     */
+    int legalMoves(int[] moves) {
+        if (winner != 'P') return 0;
+        int count = 0;
+        for (int sub = 0; sub < 9; sub++) {
+            if (next != ANY ? sub != next : (closed & (1 << sub)) != 0)
+                continue;
+            for (int open = openMask(sub); open != 0; open &= open - 1)
+                moves[count++] = 9*sub + Integer.numberOfTrailingZeros(open);
+        }
+        return count;
+    }
+    /**
+     * Pick a legal move from a random number, without listing the moves.
+     * @param r a random non-negative int.
+     */
+    int randomMove(int r) {
+        if (next != ANY) {
+            int open = openMask(next);
+            return 9*next + Utility.nthSetBit(open, r % Integer.bitCount(open));
+        }
+        int count = 0;
+        for (int sub = 0; sub < 9; sub++)
+            if ((closed & (1 << sub)) == 0)
+                count += Integer.bitCount(openMask(sub));
+        int n = r % count;
+        for (int sub = 0; ; sub++) {
+            if ((closed & (1 << sub)) != 0) continue;
+            int open = openMask(sub), here = Integer.bitCount(open);
+            if (n < here) return 9*sub + Utility.nthSetBit(open, n);
+            n -= here;
+        }
+    }
+    /** Play a move for the side to move. */
+    void makeMove(int move) {
+        int sub = move / 9, cell = move % 9, bit = 1 << cell;
+        if (isCompTurn) {
+            compMasks[sub] |= bit;
+            if (Board.hasLine(compMasks[sub])) metaComp |= 1 << sub;
+        } else {
+            userMasks[sub] |= bit;
+            if (Board.hasLine(userMasks[sub])) metaUser |= 1 << sub;
+        }
+        if (((metaComp | metaUser) & (1 << sub)) != 0 || openMask(sub) == 0)
+            closed |= 1 << sub;
+        next = (closed & (1 << cell)) != 0 ? ANY : cell;
+        if (Board.hasLine(metaComp)) winner = 'X';
+        else if (Board.hasLine(metaUser)) winner = 'O';
+        else if (closed == Board.FULL_MASK) winner = 'D';
+        moveSeq[plies++] = move;
+        isCompTurn = !isCompTurn;
+    }
+    /** @return a move which wins a small board for the side to move, or -1. */
+    private int winsSmallBoard() {
+        for (int sub = 0; sub < 9; sub++) {
+            if (next != ANY ? sub != next : (closed & (1 << sub)) != 0)
+                continue;
+            int own = isCompTurn ? compMasks[sub] : userMasks[sub];
+            for (int open = openMask(sub); open != 0; open &= open - 1) {
+                int bit = open & -open;
+                if (Board.hasLine(own | bit))
+                    return 9*sub + Integer.numberOfTrailingZeros(bit);
+            }
+        }
+        return -1;
+    }
+    /** @return the tree search, making it when first needed. */
+    private UltimateSearch search() {
+        if (search == null) search = new UltimateSearch(1 << 20);
+        return search;
+    }
+    /**
+     * @return the move of a level, for the side to move.
+     * With MoveProfiler enabled, the move's allocation is accounted;
+     * with EngineMetrics enabled, its time is recorded.
+     */
+    int move(Level level) {
+        if (!MoveProfiler.ENABLED && !EngineMetrics.ENABLED) return choose(level);
+        long before = MoveProfiler.ENABLED ? MoveProfiler.start() : 0;
+        long start = System.nanoTime();
+        int move = choose(level);
+        if (EngineMetrics.ENABLED) EngineMetrics.recordMove(level, System.nanoTime() - start);
+        if (MoveProfiler.ENABLED) MoveProfiler.end(level, before);
+        return move;
+    }
+    /** @return the move of a level, for the side to move. */
+    private int choose(Level level) {
+        switch (level) {
+            case EASY:   return levelEasy();
+            case MEDIUM: return levelMedium();
+            case HARD:   return levelHard();
+            default:     return levelWizard();
+        }
+    }
+    /** The easy level's move. Easy chooses a random legal move. */
+    int levelEasy() { return randomMove(rand.nextInt(Integer.MAX_VALUE)); }
+    /** The medium level's move. Medium takes any small board it can. */
+    int levelMedium() {
+        int move = winsSmallBoard();
+        return move < 0 ? levelEasy() : move;
+    }
+    /** The hard level's move: a tenth of the wizard's thinking. */
+    int levelHard() { return search().search(this, moveMillis / 10); }
+    /** The wizard level's move: tree search for the whole move time. */
+    int levelWizard() { return search().search(this, moveMillis); }
+}
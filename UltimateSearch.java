@@ -0,0 +1,261 @@
+/**
+ * @author Rohan
+ *
+ * Monte Carlo tree search for ultimate tic-tac-toe.
+ */
+
+/**
+ * A class which chooses moves on an UltimateBoard by Monte Carlo tree
+ * search (UCT): it grows a tree of moves, guided by the results of
+ * random games played out from its leaves, for as long as it may.
+ *
+ * The tree lives in a pool of parallel arrays allocated once, with the
+ * children of a node side by side, so a search allocates nothing. When
+ * moves are made the subtree under them is kept: it is copied, breadth
+ * first, to the front of a second pool, which then takes the first's
+ * place. A search should be used for one game at a time.
+ */
+class UltimateSearch {
+    // Static fields:
+    /** Weight of exploring rarely tried moves, against playing good ones. */
+    private static final double EXPLORATION = 1.4;
+    /** How many playouts go by between looks at the clock. */
+    private static final int CLOCK_PLAYOUTS = 64;
+    /** The most moves a position has. */
+    private static final int MAX_MOVES = 81;
+    /** Visit counts below this have their square roots tabled. */
+    private static final int TABLED = 1 << 16;
+    /** Square root of the log of each visit count. */
+    private static final float[] sqrtLogs = new float[TABLED];
+    /** One over the square root of each visit count. */
+    private static final float[] invSqrts = new float[TABLED];
+    static {
+        for (int v = 1; v < TABLED; v++) {
+            sqrtLogs[v] = (float) Math.sqrt(Math.log(v));
+            invSqrts[v] = (float) (1 / Math.sqrt(v));
+        }
+    }
+    // Fields:
+    /** The number of nodes a pool holds. */
+    private final int capacity;
+    /** Per node: its first child, or -1 if it hasn't been expanded. */
+    private int[] firstChild;
+    /** Per node: its number of children. */
+    private byte[] childCount;
+    /** Per node: the move leading to it. */
+    private byte[] moves;
+    /** Per node: the number of playouts through it. */
+    private int[] visits;
+    /** Per node: the playouts won by the side which made its move. */
+    private float[] scores;
+    /** The spare pool subtrees are copied into, in the same layout. */
+    private int[] spareFirstChild, spareVisits;
+    private byte[] spareChildCount, spareMoves;
+    private float[] spareScores;
+    /** Old node of each new node while a subtree is copied. */
+    private final int[] queue;
+    /** The number of nodes used. */
+    private int size;
+    /** The position at the root of the tree; only its position is used. */
+    private final UltimateBoard root = new UltimateBoard(false, Level.WIZARD);
+    /** The position being played out. */
+    private final UltimateBoard sim = new UltimateBoard(false, Level.WIZARD);
+    /** The nodes on the way down, and who moved into each. */
+    private final int[] path = new int[MAX_MOVES + 1];
+    private final boolean[] compMoved = new boolean[MAX_MOVES + 1];
+    /** Buffer for listing moves when a node is expanded. */
+    private final int[] moveBuffer = new int[MAX_MOVES];
+    /** State of the xorshift random numbers of the playouts. */
+    private long seed = 0x2013L;
+    /** The playouts of the last search. */
+    private long playouts;
+    /** Constructor given the number of nodes a pool holds. */
+    UltimateSearch(int capacity) {
+        this.capacity = capacity;
+        firstChild = new int[capacity];     spareFirstChild = new int[capacity];
+        childCount = new byte[capacity];    spareChildCount = new byte[capacity];
+        moves = new byte[capacity];         spareMoves = new byte[capacity];
+        visits = new int[capacity];         spareVisits = new int[capacity];
+        scores = new float[capacity];       spareScores = new float[capacity];
+        queue = new int[capacity];
+    }
+    // Accessors:
+    /** @return the playouts of the last search. */
+    long getPlayouts() { return playouts; }
+    /** @return the nodes in the tree. */
+    int getSize() { return size; }
+    /** @return the playouts under the root, kept ones included. */
+    int getRootVisits() { return visits[0]; }
+    // Methods:
+    /**
+     * Search a position for a time, reusing the tree of earlier searches
+     * if the position follows on from them.
+     * @return the move tried the most.
+     */
+    int search(UltimateBoard game, long millis) {
+        sync(game);
+        long start = System.nanoTime(), deadline = start + millis*1000000;
+        playouts = 0;
+        do {
+            for (int i = 0; i < CLOCK_PLAYOUTS; i++) iterate();
+            playouts += CLOCK_PLAYOUTS;
+        } while (System.nanoTime() < deadline);
+        if (EngineMetrics.ENABLED) // A playout is a position evaluated
+            EngineMetrics.recordSearch(playouts, System.nanoTime() - start, 0, 0);
+        int best = -1;
+        for (int c = firstChild[0]; c < firstChild[0] + childCount[0]; c++)
+            if (best < 0 || visits[c] > visits[best]) best = c;
+        return moves[best];
+    }
+    /** Bring the root up to a game, keeping what is known of it. */
+    private void sync(UltimateBoard game) {
+        int plies = root.getPlies();
+        boolean follows = size > 0 && plies <= game.getPlies()
+            && root.getIsCompTurn() == (game.getIsCompStarted() ^ plies % 2 == 1);
+        for (int p = 0; follows && p < plies; p++)
+            follows = root.getMove(p) == game.getMove(p);
+        if (!follows) {
+            reset(game);
+            return;
+        }
+        for (int p = plies; p < game.getPlies(); p++) {
+            int child = -1, move = game.getMove(p);
+            for (int c = firstChild[0]; c >= 0 && c < firstChild[0] + childCount[0]; c++)
+                if (moves[c] == move) child = c;
+            if (child < 0) { // Never looked at: start again
+                reset(game);
+                return;
+            }
+            keepSubtree(child);
+            root.makeMove(move);
+        }
+    }
+    /** Throw the tree away and start from a game's position. */
+    private void reset(UltimateBoard game) {
+        root.copyFrom(game);
+        size = 1;
+        firstChild[0] = -1;
+        childCount[0] = 0;
+        moves[0] = -1;
+        visits[0] = 0;
+        scores[0] = 0;
+    }
+    /** Make a child the root, copying its subtree to the spare pool. */
+    private void keepSubtree(int child) {
+        queue[0] = child;
+        copyNode(child, 0);
+        int count = 1;
+        for (int i = 0; i < count; i++) { // Breadth first, in new order
+            int old = queue[i];
+            if (firstChild[old] < 0) {
+                spareFirstChild[i] = -1;
+                continue;
+            }
+            spareFirstChild[i] = count;
+            for (int c = firstChild[old]; c < firstChild[old] + childCount[old]; c++) {
+                queue[count] = c;
+                copyNode(c, count++);
+            }
+        }
+        int[] ints = firstChild;   firstChild = spareFirstChild;   spareFirstChild = ints;
+        ints = visits;             visits = spareVisits;           spareVisits = ints;
+        byte[] bytes = childCount; childCount = spareChildCount;   spareChildCount = bytes;
+        bytes = moves;             moves = spareMoves;             spareMoves = bytes;
+        float[] floats = scores;   scores = spareScores;           spareScores = floats;
+        size = count;
+    }
+    /** Copy a node's own fields into the spare pool. */
+    private void copyNode(int from, int to) {
+        spareChildCount[to] = childCount[from];
+        spareMoves[to] = moves[from];
+        spareVisits[to] = visits[from];
+        spareScores[to] = scores[from];
+    }
+    /** @return the next random non-negative int, by xorshift. */
+    private int nextRandom() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 7;
+        seed ^= seed << 17;
+        return (int) (seed >>> 33);
+    }
+    /** One playout: select down the tree, expand, play out, back up. */
+    private void iterate() {
+        sim.copyFrom(root);
+        int node = 0, depth = 0;
+        path[0] = 0;
+        while (firstChild[node] >= 0) { // Select
+            node = select(node);
+            compMoved[depth + 1] = sim.getIsCompTurn();
+            sim.makeMove(moves[node]);
+            path[++depth] = node;
+        }
+        if (sim.winner() == 'P' && (visits[node] > 0 || node == 0)
+            && size + MAX_MOVES <= capacity) { // Expand
+            int count = sim.legalMoves(moveBuffer);
+            firstChild[node] = size;
+            childCount[node] = (byte) count;
+            for (int i = 0; i < count; i++, size++) {
+                firstChild[size] = -1;
+                childCount[size] = 0;
+                moves[size] = (byte) moveBuffer[i];
+                visits[size] = 0;
+                scores[size] = 0;
+            }
+            node = firstChild[node] + nextRandom() % count;
+            compMoved[depth + 1] = sim.getIsCompTurn();
+            sim.makeMove(moves[node]);
+            path[++depth] = node;
+        }
+        while (sim.winner() == 'P') // Play out
+            sim.makeMove(sim.randomMove(nextRandom()));
+        char result = sim.winner();
+        visits[0]++;
+        for (int d = 1; d <= depth; d++) { // Back up
+            visits[path[d]]++;
+            if (result == 'D') scores[path[d]] += 0.5f;
+            else if ((result == 'X') == compMoved[d]) scores[path[d]] += 1;
+        }
+    }
+    /**
+     * @return the child with the best upper confidence bound.
+     * The square roots come from tables while counts are small enough.
+     */
+    private int select(int node) {
+        int n = visits[node];
+        float explore = (float) EXPLORATION * (n < TABLED ? sqrtLogs[n]
+                                           : (float) Math.sqrt(Math.log(n)));
+        int best = -1;
+        float bestBound = -1;
+        for (int c = firstChild[node]; c < firstChild[node] + childCount[node]; c++) {
+            int v = visits[c];
+            if (v == 0) return c; // Try everything once
+            float inv = v < TABLED ? invSqrts[v] : (float) (1 / Math.sqrt(v));
+            float bound = scores[c] * inv * inv + explore * inv;
+            if (bound > bestBound) { bestBound = bound; best = c; }
+        }
+        return best;
+    }
+    /**
+     * Play the search against the medium level and print, for each of
+     * its moves, the playouts per millisecond and the size of the tree.
+     * Arguments: [milliseconds per move].
+     */
+    public static void main(String[] args) {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 100;
+        UltimateBoard board = new UltimateBoard(true, Level.WIZARD);
+        UltimateSearch search = new UltimateSearch(1 << 20);
+        while (board.winner() == 'P') {
+            if (board.getIsCompTurn()) {
+                int move = search.search(board, millis);
+                System.out.printf("move %2d: %2d  %6.0f playouts/ms  "
+                    + "%7d playouts under root  %7d nodes%n",
+                    board.getPlies() + 1, move,
+                    search.getPlayouts() / (double) millis,
+                    search.getRootVisits(), search.getSize());
+                board.makeMove(move);
+            } else
+                board.makeMove(board.levelMedium());
+        }
+        System.out.println(board+"\n\nWinner: "+board.winner());
+    }
+}
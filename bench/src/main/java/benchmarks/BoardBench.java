@@ -0,0 +1,132 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the hot paths of Board.
+ * The queries run on a fixed middle-game position: the computer has the
+ * center and a corner, the user a corner, and it is the user's move
+ * with a line to block.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoardBench {
+    /** The moves of the middle-game position, starting with the computer. */
+    private static final int[] MIDGAME = { 4, 0, 2 };
+
+    private Random rand;
+    private Object medium;
+    private Object midGame;
+    private Object corners;
+    private Object center;
+
+    @Setup
+    public void setUp() {
+        rand = new Random(2013);
+        medium = Game.level("MEDIUM");
+        midGame = Game.board(medium, true, rand, MIDGAME);
+        corners = Game.pairs(0, 2, 6, 8);
+        center = Game.pair(4);
+    }
+
+    @Benchmark
+    public Object makeMove() throws Throwable {
+        Object board = Game.NEW_BOARD.invokeExact(true, medium, rand);
+        Game.MAKE_MOVE.invokeExact(board, center, 'X');
+        return board;
+    }
+
+    @Benchmark
+    public char winner() throws Throwable {
+        return (char) Game.WINNER.invokeExact(midGame);
+    }
+
+    @Benchmark
+    public boolean isFastDraw() throws Throwable {
+        return (boolean) Game.IS_FAST_DRAW.invokeExact(midGame);
+    }
+
+    @Benchmark
+    public Object almost() throws Throwable {
+        return (Object) Game.ALMOST.invokeExact(midGame);
+    }
+
+    @Benchmark
+    public Object regSequence() throws Throwable {
+        return (Object) Game.REG_SEQUENCE.invokeExact(midGame);
+    }
+
+    /** The mask helper which replaced Utility.intersection. */
+    @Benchmark
+    public int utilityMask() throws Throwable {
+        return (int) Game.UTILITY_MASK.invokeExact(corners);
+    }
+
+    @Benchmark
+    public int utilityNthSetBit() throws Throwable {
+        return (int) Game.NTH_SET_BIT.invokeExact(0x1FF, 5);
+    }
+
+    @Benchmark
+    public Object levelEasy() throws Throwable {
+        return (Object) Game.LEVEL_EASY.invokeExact(midGame);
+    }
+
+    @Benchmark
+    public Object levelMedium() throws Throwable {
+        return (Object) Game.LEVEL_MEDIUM.invokeExact(midGame);
+    }
+
+    @Benchmark
+    public Object levelHard() throws Throwable {
+        return (Object) Game.LEVEL_HARD.invokeExact(midGame);
+    }
+
+    @Benchmark
+    public Object levelWizard() throws Throwable {
+        return (Object) Game.LEVEL_WIZARD.invokeExact(midGame);
+    }
+
+    /** A whole game from the empty board, each level against Medium. */
+    @State(Scope.Thread)
+    public static class FullGame {
+        @Param({ "EASY", "MEDIUM", "HARD", "WIZARD" })
+        public String level;
+
+        private Object comp;
+        private Object user;
+        private Random rand;
+        private boolean isCompStarted;
+
+        @Setup
+        public void setUp() {
+            comp = Game.level(level);
+            user = Game.level("MEDIUM");
+            rand = new Random(2013);
+        }
+    }
+
+    @Benchmark
+    public char fullGame(FullGame game) throws Throwable {
+        game.isCompStarted = !game.isCompStarted; // Take turns to start
+        return (char) Game.PLAY_GAME.invokeExact(game.comp, game.user,
+                                                 game.isCompStarted, game.rand);
+    }
+}
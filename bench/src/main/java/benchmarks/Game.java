@@ -0,0 +1,145 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.util.Random;
+
+/**
+ * Handles on the game's classes.
+ * The game lives in the default package, which no named package can
+ * import (and JMH refuses benchmarks in the default package), so the
+ * benchmarks reach it through method handles. The handles are static
+ * final and adapted to exact Object-based types, so the JIT inlines
+ * them like direct calls.
+ */
+final class Game {
+    /** The game's classes. */
+    static final Class<?> BOARD = load("Board"), PAIR = load("Pair"),
+        LEVEL = load("Level"), UTILITY = load("Utility"),
+        SIMULATOR = load("Simulator");
+    /** (boolean isCompStarted, Level, Random) Board */
+    static final MethodHandle NEW_BOARD = constructor(BOARD,
+        MethodType.methodType(void.class, boolean.class, LEVEL, Random.class),
+        MethodType.methodType(Object.class, boolean.class, Object.class,
+                              Random.class));
+    /** (Board, Pair, char) void */
+    static final MethodHandle MAKE_MOVE = virtual(BOARD, "makeMove",
+        MethodType.methodType(void.class, PAIR, char.class),
+        MethodType.methodType(void.class, Object.class, Object.class,
+                              char.class));
+    /** (Board) char */
+    static final MethodHandle WINNER = virtual(BOARD, "winner",
+        MethodType.methodType(char.class),
+        MethodType.methodType(char.class, Object.class));
+    /** (Board) boolean */
+    static final MethodHandle IS_FAST_DRAW = virtual(BOARD, "isFastDraw",
+        MethodType.methodType(boolean.class),
+        MethodType.methodType(boolean.class, Object.class));
+    /** (Board) Pair, for almost, regSequence and each level. */
+    static final MethodHandle ALMOST = pairGetter("almost"),
+        REG_SEQUENCE = pairGetter("regSequence"),
+        LEVEL_EASY = pairGetter("levelEasy"),
+        LEVEL_MEDIUM = pairGetter("levelMedium"),
+        LEVEL_HARD = pairGetter("levelHard"),
+        LEVEL_WIZARD = pairGetter("levelWizard");
+    /** (int) Pair */
+    static final MethodHandle PAIR_BY_INDEX = statik(PAIR, "byIndex",
+        MethodType.methodType(PAIR, int.class),
+        MethodType.methodType(Object.class, int.class));
+    /** (Pair[]) int */
+    static final MethodHandle UTILITY_MASK = statik(UTILITY, "mask",
+        MethodType.methodType(int.class, PAIR.arrayType()),
+        MethodType.methodType(int.class, Object.class));
+    /** (int, int) int */
+    static final MethodHandle NTH_SET_BIT = statik(UTILITY, "nthSetBit",
+        MethodType.methodType(int.class, int.class, int.class),
+        MethodType.methodType(int.class, int.class, int.class));
+    /** (Level comp, Level user, boolean isCompStarted, Random) char */
+    static final MethodHandle PLAY_GAME = statik(SIMULATOR, "playGame",
+        MethodType.methodType(char.class, LEVEL, LEVEL, boolean.class,
+                              Random.class),
+        MethodType.methodType(char.class, Object.class, Object.class,
+                              boolean.class, Random.class));
+
+    /** Uninstantiable. */
+    private Game() {}
+
+    /** @return the Level of a name. */
+    static Object level(String name) {
+        for (Object level : LEVEL.getEnumConstants())
+            if (((Enum<?>) level).name().equals(name)) return level;
+        throw new IllegalArgumentException("No level "+name);
+    }
+    /** @return the Pair of a numerical (0-8) coordinate. */
+    static Object pair(int index) {
+        try {
+            return PAIR_BY_INDEX.invokeExact(index);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+    /** @return a Pair[] of numerical coordinates. */
+    static Object pairs(int... indexes) {
+        Object array = Array.newInstance(PAIR, indexes.length);
+        for (int i = 0; i < indexes.length; i++)
+            Array.set(array, i, pair(indexes[i]));
+        return array;
+    }
+    /** @return a board after moves, alternating from the starter. */
+    static Object board(Object level, boolean isCompStarted, Random rand,
+                        int... moves) {
+        try {
+            Object board = NEW_BOARD.invokeExact(isCompStarted, level, rand);
+            boolean comp = isCompStarted;
+            for (int move : moves) {
+                MAKE_MOVE.invokeExact(board, pair(move), comp ? 'X' : 'O');
+                comp = !comp;
+            }
+            return board;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    private static MethodHandles.Lookup lookup(Class<?> type)
+            throws IllegalAccessException {
+        return MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+    }
+    private static MethodHandle constructor(Class<?> type, MethodType real,
+                                            MethodType exact) {
+        try {
+            return lookup(type).findConstructor(type, real).asType(exact);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    private static MethodHandle virtual(Class<?> type, String name,
+                                        MethodType real, MethodType exact) {
+        try {
+            return lookup(type).findVirtual(type, name, real).asType(exact);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    private static MethodHandle statik(Class<?> type, String name,
+                                       MethodType real, MethodType exact) {
+        try {
+            return lookup(type).findStatic(type, name, real).asType(exact);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    private static MethodHandle pairGetter(String name) {
+        return virtual(BOARD, name, MethodType.methodType(PAIR),
+                       MethodType.methodType(Object.class, Object.class));
+    }
+}